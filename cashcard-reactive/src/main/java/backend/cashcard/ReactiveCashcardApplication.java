@@ -0,0 +1,13 @@
+package backend.cashcard;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class ReactiveCashcardApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveCashcardApplication.class, args);
+	}
+
+}
@@ -0,0 +1,121 @@
+package backend.cashcard.controller;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+
+/*
+* Same /cashcards contract and owner checks as the servlet CashCardController,
+* but no handler ever blocks: a request waiting on the database doesn't hold a thread.
+*/
+@RestController
+@RequestMapping("/cashcards")
+class CashCardController {
+
+    // spring.data.web.pageable.max-page-size of the servlet service, Spring Data's default
+    static final int MAX_PAGE_SIZE = 2000;
+
+    private final CashCardRepository cashCardRepository;
+
+    private CashCardController(CashCardRepository cashCardRepository) {
+        this.cashCardRepository = cashCardRepository;
+    }
+
+    @GetMapping("/{id}")
+    private Mono<ResponseEntity<CashCard>> findById(@PathVariable Long id, Principal principal) {
+        return cashCardRepository.findByIdAndOwner(id, principal.getName())
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /*
+    * Spring Data's Pageable argument resolver only exists for Spring MVC,
+    * so page/size/sort are read by hand with the same defaults (0, 20, amount ascending).
+    * A size over MAX_PAGE_SIZE is cut down to it, a negative page or a size under 1 is a 400.
+    */
+    @GetMapping
+    private Mono<ResponseEntity<List<CashCard>>> findAll(@RequestParam(defaultValue = "0") int page,
+                                                         @RequestParam(defaultValue = "20") int size,
+                                                         ServerHttpRequest request,
+                                                         Principal principal) {
+        if (page < 0 || size < 1) return Mono.just(ResponseEntity.badRequest().build());
+
+        // read from the raw query, a List<String> @RequestParam would split "amount,desc" on the comma
+        List<String> sort = request.getQueryParams().get("sort");
+        PageRequest pageRequest = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE), toSort(sort));
+        return cashCardRepository.findByOwner(principal.getName(), pageRequest)
+                .collectList()
+                .map(ResponseEntity::ok);
+    }
+
+    /*
+    * sort=amount,desc&sort=id
+    */
+    private static Sort toSort(List<String> sort) {
+        if (sort == null || sort.isEmpty()) {
+            return Sort.by(Sort.Direction.ASC, "amount");
+        }
+        Sort result = Sort.unsorted();
+        for (String order : sort) {
+            String[] parts = order.split(",");
+            Sort.Direction direction = parts.length > 1
+                    ? Sort.Direction.fromOptionalString(parts[1]).orElse(Sort.Direction.ASC)
+                    : Sort.Direction.ASC;
+            result = result.and(Sort.by(direction, parts[0]));
+        }
+        return result;
+    }
+
+    /*
+    * Every card has an amount, like in the servlet service: a card without one would fall out of every page
+    * sorted or filtered by amount. 400 when it is missing (or not finite), on every create and update.
+    */
+    private static boolean isValidAmount(Double amount) {
+        return amount != null && Double.isFinite(amount);
+    }
+
+    @PostMapping
+    private Mono<ResponseEntity<Void>> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb, Principal principal) {
+        if (!isValidAmount(newCashCardRequest.amount())) return Mono.just(ResponseEntity.badRequest().build());
+
+        // the id is generated by the database, an id sent by the client is ignored
+        CashCard cashCardWithOwner = new CashCard(null, newCashCardRequest.amount(), principal.getName());
+        return cashCardRepository.save(cashCardWithOwner)
+                .map(savedCashCard -> {
+                    URI locationOfNewCashCard = ucb
+                            .path("cashcards/{id}")
+                            .buildAndExpand(savedCashCard.id())
+                            .toUri();
+                    return ResponseEntity.created(locationOfNewCashCard).build();
+                });
+    }
+
+    @PutMapping("/{id}")
+    private Mono<ResponseEntity<Void>> putCashCard(@PathVariable Long id, @RequestBody CashCard cashCardUpdate, Principal principal) {
+        if (!isValidAmount(cashCardUpdate.amount())) return Mono.just(ResponseEntity.badRequest().build());
+
+        return cashCardRepository.updateAmountByIdAndOwner(id, principal.getName(), cashCardUpdate.amount())
+                .map(updated -> updated == 0
+                        ? ResponseEntity.notFound().<Void>build()
+                        : ResponseEntity.noContent().<Void>build());
+    }
+
+    @DeleteMapping("/{id}")
+    private Mono<ResponseEntity<Void>> deleteCashCard(@PathVariable Long id, Principal principal) {
+        return cashCardRepository.deleteByIdAndOwner(id, principal.getName())
+                .map(deleted -> deleted == 0
+                        ? ResponseEntity.notFound().<Void>build()
+                        : ResponseEntity.noContent().<Void>build());
+    }
+
+}
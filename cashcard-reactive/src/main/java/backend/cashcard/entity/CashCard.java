@@ -0,0 +1,12 @@
+package backend.cashcard.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/*
+* Spring Data R2DBC maps records directly, no no-argument constructor is needed here.
+* The JSON is the same as the servlet service: {"id": 99, "amount": 123.45, "owner": "felix"}
+*/
+@Table("CASH_CARD")
+public record CashCard(@Id Long id, Double amount, String owner) {
+}
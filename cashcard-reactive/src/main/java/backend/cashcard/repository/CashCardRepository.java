@@ -0,0 +1,30 @@
+package backend.cashcard.repository;
+
+import backend.cashcard.entity.CashCard;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface CashCardRepository extends ReactiveCrudRepository<CashCard, Long> {
+
+    Mono<CashCard> findByIdAndOwner(Long id, String owner);
+
+    Flux<CashCard> findByOwner(String owner, Pageable pageable);
+
+    /*
+    * Same single statement mutations as the servlet service, the owner check is part of the WHERE clause.
+    */
+    @Modifying
+    @Query("UPDATE CASH_CARD SET AMOUNT = :amount WHERE ID = :id AND OWNER = :owner")
+    Mono<Integer> updateAmountByIdAndOwner(Long id, String owner, Double amount);
+
+    @Modifying
+    @Query("DELETE FROM CASH_CARD WHERE ID = :id AND OWNER = :owner")
+    Mono<Integer> deleteByIdAndOwner(Long id, String owner);
+
+}
@@ -0,0 +1,80 @@
+package backend.cashcard.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Reactive counterpart of the servlet CachingAuthenticationProvider: successful BCrypt verifications
+ * are cached for a short TTL, keyed by an HMAC-SHA256 of the credentials under a random per-process key.
+ * Failed attempts are never cached.
+ */
+public class CachingReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final ReactiveAuthenticationManager delegate;
+
+    private final Cache<String, Authentication> cache;
+
+    private final ThreadLocal<Mac> mac;
+
+    public CachingReactiveAuthenticationManager(ReactiveAuthenticationManager delegate, long maximumSize, Duration ttl) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        SecretKeySpec key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        this.mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac instance = Mac.getInstance(HMAC_ALGORITHM);
+                instance.init(key);
+                return instance;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication.getCredentials() instanceof String password)) {
+            return delegate.authenticate(authentication);
+        }
+
+        String digest = digest(authentication.getName(), password);
+        Authentication cached = cache.getIfPresent(digest);
+        if (cached != null) {
+            return Mono.just(UsernamePasswordAuthenticationToken.authenticated(
+                    cached.getPrincipal(), null, cached.getAuthorities()));
+        }
+        return delegate.authenticate(authentication)
+                .doOnNext(result -> {
+                    if (result.isAuthenticated()) {
+                        cache.put(digest, result);
+                    }
+                });
+    }
+
+    private String digest(String username, String password) {
+        Mac instance = mac.get();
+        instance.update(username.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        return Base64.getEncoder().encodeToString(instance.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    }
+}
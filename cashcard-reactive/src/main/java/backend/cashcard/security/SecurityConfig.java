@@ -0,0 +1,83 @@
+package backend.cashcard.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+
+import java.time.Duration;
+
+/**
+ * Reactive counterpart of the servlet SecurityConfig: a SecurityWebFilterChain instead of a SecurityFilterChain.
+ * The reactive authentication manager runs BCrypt on a bounded elastic scheduler, never on the event loop.
+ **/
+@Configuration
+@EnableWebFluxSecurity
+public class SecurityConfig {
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        http
+                .authorizeExchange(exchange -> exchange
+                                .pathMatchers("/cashcards/**").hasRole("CARD-OWNER")
+                                .anyExchange().permitAll()
+                )
+                .httpBasic(Customizer.withDefaults())
+                .csrf(csrf -> csrf.disable());
+        return http.build();
+    }
+
+    /**
+     * As in the servlet service, repeated Basic Auth requests skip BCrypt.
+     * The user store is a fixed map here, so there is no user change to evict on, entries just expire.
+     */
+    @Bean
+    ReactiveAuthenticationManager authenticationManager(ReactiveUserDetailsService users, PasswordEncoder passwordEncoder,
+                                                        @Value("${cashcard.security.credential-cache.maximum-size:10000}") long maximumSize,
+                                                        @Value("${cashcard.security.credential-cache.ttl:60s}") Duration ttl) {
+        UserDetailsRepositoryReactiveAuthenticationManager bcryptManager = new UserDetailsRepositoryReactiveAuthenticationManager(users);
+        bcryptManager.setPasswordEncoder(passwordEncoder);
+        return new CachingReactiveAuthenticationManager(bcryptManager, maximumSize, ttl);
+    }
+
+    @Bean
+    PasswordEncoder passwordEncoder(){
+        return new BCryptPasswordEncoder();
+    }
+
+    @Bean
+    MapReactiveUserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder){
+        User.UserBuilder users = User.builder();
+        UserDetails felix = users
+                                .username("felix")
+                                .password(passwordEncoder.encode("abc123"))
+                                .roles("CARD-OWNER")
+                                .build();
+
+        UserDetails userWhoOwnsNoCards = users
+                                            .username("user-owns-no-cards")
+                                            .password(passwordEncoder.encode("qrs456"))
+                                            .roles("NON-OWNER")
+                                            .build();
+
+        UserDetails kumar = users
+                                            .username("kumar2")
+                                            .password(passwordEncoder.encode("xyz789"))
+                                            .roles("CARD-OWNER")
+                                            .build();
+
+        return new MapReactiveUserDetailsService(felix, userWhoOwnsNoCards, kumar);
+    }
+
+}
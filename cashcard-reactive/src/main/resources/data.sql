@@ -0,0 +1,5 @@
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (99, 123.45, 'felix');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (100, 1.00, 'felix');
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (101, 150.00, 'felix');
+
+INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (102, 200.00, 'kumar2');
\ No newline at end of file
@@ -0,0 +1,13 @@
+/*
+* R2DBC doesn't generate the schema from the entity. The columns are the ones of the CashCard record:
+* unlike the servlet service there is no VERSION, nothing here uses optimistic locking or ETags.
+*/
+CREATE TABLE CASH_CARD
+(
+    ID     BIGINT GENERATED BY DEFAULT AS IDENTITY (START WITH 1000) PRIMARY KEY,
+    AMOUNT DOUBLE PRECISION NOT NULL,
+    OWNER  VARCHAR(255)
+);
+
+CREATE INDEX IDX_CASH_CARD_OWNER_AMOUNT_ID ON CASH_CARD (OWNER, AMOUNT, ID);
+CREATE INDEX IDX_CASH_CARD_OWNER_ID ON CASH_CARD (OWNER, ID);
@@ -0,0 +1,185 @@
+package backend.cashcard;
+
+import backend.cashcard.entity.CashCard;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.net.URI;
+
+
+/**
+ * Same contract as the servlet CashcardApplicationTests, exercised through WebTestClient.
+ **/
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ReactiveCashcardApplicationTests {
+
+	@Autowired
+	WebTestClient webTestClient;
+
+	@Test
+	void shouldReturnACashCardWhenDataIsSaved() {
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.id").isEqualTo(99)
+				.jsonPath("$.amount").isEqualTo(123.45);
+	}
+
+	@Test
+	void shouldNotAllowAccessToCashCardsTheyDoNotOwn() {
+		webTestClient.get().uri("/cashcards/102")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	void shouldRejectUsersWhoAreNotCardOwners() {
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("user-owns-no-cards", "qrs456"))
+				.exchange()
+				.expectStatus().isForbidden();
+	}
+
+	@Test
+	void shouldNotReturnACashCardWhenUsingBadCredential() {
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "BAD-PASSWORD"))
+				.exchange()
+				.expectStatus().isUnauthorized();
+	}
+
+	@Test
+	void shouldReturnASortedPageOfCashCards() {
+		webTestClient.get().uri("/cashcards?page=0&size=1&sort=amount,desc")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].amount").isEqualTo(150.00);
+	}
+
+	@Test
+	void shouldRejectAnInvalidPageAndCapTheSizeOfAPage() {
+		for (String query : new String[] {"page=-1", "size=0", "size=-5"}) {
+			webTestClient.get().uri("/cashcards?" + query)
+					.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+					.exchange()
+					.expectStatus().isBadRequest();
+		}
+
+		webTestClient.get().uri("/cashcards?size=100000000")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void shouldReturnAllCashCardsSortedByAmountByDefault() {
+		webTestClient.get().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].amount").isEqualTo(1.00)
+				.jsonPath("$[2].amount").isEqualTo(150.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateANewCashCard() {
+		URI location = webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.bodyValue(new CashCard(null, 250.00, null))
+				.exchange()
+				.expectStatus().isCreated()
+				.returnResult(Void.class)
+				.getResponseHeaders().getLocation();
+
+		webTestClient.get().uri(location)
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(250.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldUpdateAnExistingCashCard() {
+		webTestClient.put().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.bodyValue(new CashCard(null, 19.99, null))
+				.exchange()
+				.expectStatus().isNoContent();
+
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(19.99);
+	}
+
+	@Test
+	void shouldRejectACashCardWithoutAnAmount() {
+		webTestClient.post().uri("/cashcards")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.bodyValue(new CashCard(null, null, null))
+				.exchange()
+				.expectStatus().isBadRequest();
+
+		webTestClient.put().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.bodyValue(new CashCard(null, null, null))
+				.exchange()
+				.expectStatus().isBadRequest();
+
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectBody()
+				.jsonPath("$.amount").isEqualTo(123.45);
+	}
+
+	@Test
+	void shouldNotUpdateACashCardThatIsOwnedBySomeoneElse() {
+		webTestClient.put().uri("/cashcards/102")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.bodyValue(new CashCard(null, 333.33, null))
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldDeleteAnExistingCashCard() {
+		webTestClient.delete().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isNoContent();
+
+		webTestClient.get().uri("/cashcards/99")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void shouldNotAllowDeletionOfCashCardsTheyDoNotOwn() {
+		webTestClient.delete().uri("/cashcards/102")
+				.headers(headers -> headers.setBasicAuth("felix", "abc123"))
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+}
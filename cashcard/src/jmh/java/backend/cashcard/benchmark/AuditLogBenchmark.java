@@ -0,0 +1,61 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.audit.AuditLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost added to a request by AuditFilter: AuditLog.publish, with every thread publishing as fast as it can,
+ * more than the writer thread can write. With DROP the ring is full most of the time and the excess is dropped,
+ * with BLOCK the publishers wait for the writer. Run with -prof gc to check that publishing allocates nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AuditLogBenchmark {
+
+    @Param({"DROP", "BLOCK"})
+    public AuditLog.BackPressure backPressure;
+
+    private AuditLog auditLog;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cashcard-audit-benchmark");
+        auditLog = new AuditLog(directory, 65536, backPressure, DataSize.ofMegabytes(64), 2);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        auditLog.destroy();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean publish() {
+        return auditLog.publish("felix", "GET", "/cashcards/{id}", 99, 200, 412_000);
+    }
+}
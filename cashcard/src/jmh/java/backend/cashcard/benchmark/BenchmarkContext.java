@@ -0,0 +1,55 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.CashcardApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Starts the whole application for a benchmark, on a random port and on its own in-memory database
+ * so that benchmarks running in the same JVM don't see each other's rows.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Properties are passed as command line arguments so that they win over application.properties.
+     */
+    static ConfigurableApplicationContext start(String databaseName, String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                // devtools is on the test classpath, its in-memory database shutdown hook only adds noise here
+                "--spring.autoconfigure.exclude=org.springframework.boot.devtools.autoconfigure.DevToolsDataSourceAutoConfiguration",
+                "--spring.datasource.url=jdbc:h2:mem:" + databaseName + ";DB_CLOSE_ON_EXIT=FALSE",
+                // a benchmark is one principal looping as fast as it can, exactly what the rate limit is there to stop
+                "--cashcard.rate-limit.enabled=false"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(CashcardApplication.class).run(args.toArray(String[]::new));
+    }
+
+    static URI uri(ConfigurableApplicationContext context, String path) {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    /**
+     * Request builder authenticated as one of the test users of SecurityConfig.
+     */
+    static HttpRequest.Builder request(URI uri, String username, String password) {
+        String credentials = Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(uri).header("Authorization", "Basic " + credentials);
+    }
+}
@@ -0,0 +1,85 @@
+package backend.cashcard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to create N cards over HTTP: N POST /cashcards against one POST /cashcards/batch.
+ * Throughput in cards/s is cards divided by the reported time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CashCardBatchCreateBenchmark {
+
+    @Param({"10000"})
+    public int cards;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI single;
+    private URI batch;
+    private String batchBody;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("batch-create-benchmark");
+        client = HttpClient.newHttpClient();
+        single = BenchmarkContext.uri(context, "/cashcards");
+        batch = BenchmarkContext.uri(context, "/cashcards/batch");
+
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < cards; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"amount\":").append(i % 500).append(".25}");
+        }
+        batchBody = body.append(']').toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int createOneByOne() throws IOException, InterruptedException {
+        int created = 0;
+        for (int i = 0; i < cards; i++) {
+            created += send(single, "{\"amount\":" + (i % 500) + ".25}") == 201 ? 1 : 0;
+        }
+        return created;
+    }
+
+    @Benchmark
+    public int createInOneBatch() throws IOException, InterruptedException {
+        return send(batch, batchBody);
+    }
+
+    private int send(URI uri, String json) throws IOException, InterruptedException {
+        HttpRequest request = BenchmarkContext.request(uri, "felix", "abc123")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
@@ -0,0 +1,84 @@
+package backend.cashcard.benchmark;
+
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.DefaultMockMvcBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Full CashCardController dispatch through MockMvc (no network), with the Spring Security
+ * filter chain and Basic Auth, or without any filter and a principal set on the request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardControllerBenchmark {
+
+    @Param({"true", "false"})
+    public boolean security;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String authorization;
+    private Principal principal;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("controller-benchmark");
+        DefaultMockMvcBuilder builder = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context);
+        if (security) {
+            builder.addFilters(context.getBean("springSecurityFilterChain", Filter.class));
+        }
+        mockMvc = builder.build();
+        authorization = "Basic " + Base64.getEncoder().encodeToString("felix:abc123".getBytes(StandardCharsets.UTF_8));
+        principal = UsernamePasswordAuthenticationToken.authenticated("felix", null, List.of());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult findById() throws Exception {
+        return mockMvc.perform(authenticated(get("/cashcards/99"))).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult findAll() throws Exception {
+        return mockMvc.perform(authenticated(get("/cashcards?page=0&size=20"))).andReturn();
+    }
+
+    private MockHttpServletRequestBuilder authenticated(MockHttpServletRequestBuilder request) {
+        return security ? request.header(HttpHeaders.AUTHORIZATION, authorization) : request.principal(principal);
+    }
+}
@@ -0,0 +1,83 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardFields;
+import backend.cashcard.repository.CashCardRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A page of an owner's cards read and serialized to JSON: full entities (what GET /cashcards returns)
+ * against the id,amount sparse fieldset (GET /cashcards?fields=id,amount).
+ * 100 owners with 2000 cards each. Run with -prof gc for the allocation rate per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardFieldsBenchmark {
+
+    private static final int OWNERS = 100;
+    private static final List<String> ID_AND_AMOUNT = List.of("id", "amount");
+
+    @Param({"100", "2000"})
+    public int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository repository;
+    private ObjectMapper objectMapper;
+    private PageRequest page;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("fields-benchmark-" + pageSize);
+        repository = context.getBean(CashCardRepository.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        CashCardRepositoryBenchmark.insertCashCards(context.getBean(JdbcTemplate.class), OWNERS * 2000, OWNERS);
+        page = PageRequest.of(0, pageSize, Sort.by(Sort.Direction.ASC, "amount"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] entities() throws JsonProcessingException {
+        Slice<CashCard> cashCards = repository.findByOwner(randomOwner(), page);
+        return objectMapper.writeValueAsBytes(cashCards.getContent());
+    }
+
+    @Benchmark
+    public byte[] fields() throws JsonProcessingException {
+        List<CashCardFields> cashCards = repository.findFieldsByOwner(randomOwner(), ID_AND_AMOUNT, null, null, page);
+        return objectMapper.writeValueAsBytes(cashCards);
+    }
+
+    private static String randomOwner() {
+        return "owner-" + ThreadLocalRandom.current().nextInt(OWNERS);
+    }
+}
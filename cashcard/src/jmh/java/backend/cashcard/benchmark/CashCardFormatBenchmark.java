@@ -0,0 +1,98 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A page of cards as JSON, Smile and CBOR, with the mappers BinaryFormatsConfig gives the converters:
+ * encoding, decoding, and encoding followed by gzip (what server.compression adds above its threshold).
+ * The payload sizes, raw and gzipped, are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    @Param({"20", "100", "1000"})
+    public int cards;
+
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+
+    private CashCard[] cashCardList;
+    private byte[] cashCardListPayload;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        ObjectMapper formatMapper = switch (format) {
+            case "json" -> objectMapper;
+            case "smile" -> objectMapper.copyWith(SmileFactory.builder()
+                    .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                    .build());
+            case "cbor" -> objectMapper.copyWith(new CBORFactory());
+            default -> throw new IllegalArgumentException(format);
+        };
+        listWriter = formatMapper.writerFor(CashCard[].class);
+        listReader = formatMapper.readerFor(CashCard[].class);
+
+        cashCardList = new CashCard[cards];
+        for (int i = 0; i < cards; i++) {
+            cashCardList[i] = new CashCard(1000L + i, (i % 500) + 0.25, "felix");
+        }
+        cashCardListPayload = listWriter.writeValueAsBytes(cashCardList);
+        System.out.printf("%n%s, %d cards: %d bytes, %d gzipped%n",
+                format, cards, cashCardListPayload.length, gzip(cashCardListPayload).length);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return listWriter.writeValueAsBytes(cashCardList);
+    }
+
+    @Benchmark
+    public CashCard[] deserializeList() throws IOException {
+        return listReader.readValue(cashCardListPayload);
+    }
+
+    @Benchmark
+    public byte[] serializeAndGzipList() throws IOException {
+        return gzip(listWriter.writeValueAsBytes(cashCardList));
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(payload.length / 2);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+}
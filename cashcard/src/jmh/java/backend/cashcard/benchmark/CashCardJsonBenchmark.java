@@ -0,0 +1,99 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization and deserialization of a single CashCard and of CashCard[] pages,
+ * with the same ObjectMapper defaults Spring Boot uses for the controllers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardJsonBenchmark {
+
+    private ObjectWriter cashCardWriter;
+    private ObjectReader cashCardReader;
+
+    private CashCard cashCard;
+    private byte[] cashCardJson;
+
+    /**
+     * The pages, in a state of their own: only the list benchmarks run once per size.
+     */
+    @State(Scope.Benchmark)
+    public static class Page {
+
+        @Param({"10", "1000", "100000"})
+        public int cards;
+
+        private ObjectWriter listWriter;
+        private ObjectReader listReader;
+
+        private CashCard[] cashCardList;
+        private byte[] cashCardListJson;
+
+        @Setup
+        public void setUp() throws IOException {
+            ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+            listWriter = objectMapper.writerFor(CashCard[].class);
+            listReader = objectMapper.readerFor(CashCard[].class);
+
+            cashCardList = new CashCard[cards];
+            for (int i = 0; i < cards; i++) {
+                cashCardList[i] = new CashCard(1000L + i, (i % 500) + 0.25, "felix");
+            }
+            cashCardListJson = listWriter.writeValueAsBytes(cashCardList);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        cashCardWriter = objectMapper.writerFor(CashCard.class);
+        cashCardReader = objectMapper.readerFor(CashCard.class);
+
+        cashCard = new CashCard(99L, 123.45, "felix");
+        cashCardJson = cashCardWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public byte[] serializeCashCard() throws IOException {
+        return cashCardWriter.writeValueAsBytes(cashCard);
+    }
+
+    @Benchmark
+    public CashCard deserializeCashCard() throws IOException {
+        return cashCardReader.readValue(cashCardJson);
+    }
+
+    @Benchmark
+    public byte[] serializeList(Page page) throws IOException {
+        return page.listWriter.writeValueAsBytes(page.cashCardList);
+    }
+
+    @Benchmark
+    public CashCard[] deserializeList(Page page) throws IOException {
+        return page.listReader.readValue(page.cashCardListJson);
+    }
+}
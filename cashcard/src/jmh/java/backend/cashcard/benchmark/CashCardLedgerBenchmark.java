@@ -0,0 +1,70 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.service.CashCardService;
+import backend.cashcard.service.CashCardService.BalanceChangeResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CashCardService.credit, one balance change of one card:
+ * - jpa: row lock, UPDATE of the card and of the summary of the owner, commit
+ * - ledger: compare-and-set in the index and a record appended to the memory-mapped log,
+ *   the row is written by LedgerMaterializer in the background
+ * - ledger-force: the same, with each record synced to the disk before returning
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardLedgerBenchmark {
+
+    private static final Long CARD_ID = 101L;
+    private static final String OWNER = "felix";
+
+    @Param({"jpa", "ledger", "ledger-force"})
+    public String engine;
+
+    private ConfigurableApplicationContext context;
+    private CashCardService service;
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cashcard-ledger-benchmark");
+        context = BenchmarkContext.start("ledger-benchmark",
+                "cashcard.ledger.enabled=" + !engine.equals("jpa"),
+                "cashcard.ledger.force=" + engine.equals("ledger-force"),
+                "cashcard.ledger.directory=" + directory);
+        service = context.getBean(CashCardService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public BalanceChangeResult credit() {
+        return service.credit(CARD_ID, OWNER, 0.01);
+    }
+}
@@ -0,0 +1,90 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /cashcards listing queries from 1k to 10M rows, over a fixed number of owners so that
+ * the cards per owner grow with the table. With the (owner, amount, id) index a page costs
+ * an index seek plus the page itself, the scores should grow far slower than the row count.
+ * The 10M rows case needs a large heap, hence -Xmx.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CashCardListingBenchmark {
+
+    static final int OWNERS = 1000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository repository;
+    private String[] owners;
+    private PageRequest firstPage;
+    private Limit pageLimit;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("listing-benchmark-" + rows);
+        repository = context.getBean(CashCardRepository.class);
+        CashCardRepositoryBenchmark.insertCashCards(context.getBean(JdbcTemplate.class), rows, OWNERS);
+
+        owners = new String[OWNERS];
+        for (int i = 0; i < OWNERS; i++) {
+            owners[i] = "owner-" + i;
+        }
+        firstPage = PageRequest.of(0, 20, Sort.by(Sort.Direction.ASC, "amount"));
+        pageLimit = Limit.of(21);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Slice<CashCard> firstPageSortedByAmount() {
+        return repository.findByOwner(randomOwner(), firstPage);
+    }
+
+    @Benchmark
+    public Slice<CashCard> amountRangeFirstPage() {
+        return repository.findByOwnerAndAmountBetween(randomOwner(), 400.0, 600.0, firstPage);
+    }
+
+    @Benchmark
+    public List<CashCard> keysetPageInTheMiddle() {
+        return repository.findByOwnerAfter(randomOwner(), 500.25, 0L, -Double.MAX_VALUE, Double.MAX_VALUE, pageLimit);
+    }
+
+    private String randomOwner() {
+        return owners[ThreadLocalRandom.current().nextInt(OWNERS)];
+    }
+}
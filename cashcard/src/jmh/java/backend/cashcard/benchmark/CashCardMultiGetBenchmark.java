@@ -0,0 +1,93 @@
+package backend.cashcard.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering N specific cards: N GET /cashcards/{id} against one GET /cashcards?ids=...
+ * With cache=false the card cache is disabled (maximum size 0), so every card is read from the database:
+ * N single-row queries against one IN query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardMultiGetBenchmark {
+
+    private static final String OWNER = "felix";
+
+    @Param({"10", "100"})
+    public int cards;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI[] singles;
+    private URI multi;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("multi-get-benchmark",
+                "cashcard.cache.maximum-size=" + (cache ? 10000 : 0));
+        client = HttpClient.newHttpClient();
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        singles = new URI[cards];
+        StringJoiner ids = new StringJoiner(",");
+        for (int i = 0; i < cards; i++) {
+            long id = CashCardRepositoryBenchmark.FIRST_ID + i;
+            jdbcTemplate.update("INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (?, ?, ?)", id, i + 0.25, OWNER);
+            singles[i] = BenchmarkContext.uri(context, "/cashcards/" + id);
+            ids.add(Long.toString(id));
+        }
+        multi = BenchmarkContext.uri(context, "/cashcards?ids=" + ids);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int singleGets() throws IOException, InterruptedException {
+        int found = 0;
+        for (URI single : singles) {
+            found += get(single) == 200 ? 1 : 0;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int multiGet() throws IOException, InterruptedException {
+        return get(multi);
+    }
+
+    private int get(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = BenchmarkContext.request(uri, OWNER, "abc123").GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
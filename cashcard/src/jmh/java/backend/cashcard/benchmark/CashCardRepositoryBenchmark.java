@@ -0,0 +1,88 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CashCardRepository reads against H2 at several table sizes.
+ * Rows are spread over OWNERS owners, so each owner holds rows / OWNERS cards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardRepositoryBenchmark {
+
+    static final int OWNERS = 100;
+    static final long FIRST_ID = 1_000_000L;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository repository;
+    private String[] owners;
+    private PageRequest firstPage;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("repository-benchmark-" + rows);
+        repository = context.getBean(CashCardRepository.class);
+        insertCashCards(context.getBean(JdbcTemplate.class), rows, OWNERS);
+
+        owners = new String[OWNERS];
+        for (int i = 0; i < OWNERS; i++) {
+            owners[i] = "owner-" + i;
+        }
+        firstPage = PageRequest.of(0, 20, Sort.by(Sort.Direction.ASC, "amount"));
+    }
+
+    /**
+     * Bulk loads rows with ids from FIRST_ID, card x belongs to "owner-" + (x % owners).
+     */
+    static void insertCashCards(JdbcTemplate jdbcTemplate, int rows, int owners) {
+        jdbcTemplate.update("""
+                INSERT INTO CASH_CARD(ID, AMOUNT, OWNER)
+                SELECT X, MOD(X, 1000) + 0.25, 'owner-' || MOD(X, ?)
+                FROM SYSTEM_RANGE(?, ?)
+                """, owners, FIRST_ID, FIRST_ID + rows - 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CashCard findByIdAndOwner() {
+        long id = FIRST_ID + ThreadLocalRandom.current().nextInt(rows);
+        return repository.findByIdAndOwner(id, owners[(int) (id % OWNERS)]);
+    }
+
+    @Benchmark
+    public Slice<CashCard> findByOwner() {
+        return repository.findByOwner(owners[ThreadLocalRandom.current().nextInt(OWNERS)], firstPage);
+    }
+}
@@ -0,0 +1,95 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardRepository;
+import backend.cashcard.service.CashCardService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PUT and DELETE write paths: the previous read-then-write repository calls against the ones of CashCardService,
+ * a single conditional UPDATE/DELETE ... WHERE id = ? AND owner = ? returning the old amount, plus the UPDATE
+ * of the summary of the owner. The delete benchmarks re-insert the row (and count it in the summary) first,
+ * that costs the same on both sides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CashCardWriteBenchmark {
+
+    private static final Long UPDATED_ID = 99L;
+    private static final Long DELETED_ID = 1_000_000L;
+    private static final String OWNER = "felix";
+
+    private ConfigurableApplicationContext context;
+    private CashCardRepository repository;
+    private CashCardService service;
+    private JdbcTemplate jdbcTemplate;
+    private double amount;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkContext.start("write-benchmark");
+        repository = context.getBean(CashCardRepository.class);
+        service = context.getBean(CashCardService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public CashCard updateFindThenSave() {
+        CashCard cashCard = repository.findByIdAndOwner(UPDATED_ID, OWNER);
+        return repository.save(new CashCard(cashCard.getId(), nextAmount(), OWNER, cashCard.getVersion()));
+    }
+
+    @Benchmark
+    public boolean updateConditional() {
+        return service.updateAmount(UPDATED_ID, OWNER, nextAmount());
+    }
+
+    @Benchmark
+    public boolean deleteExistsThenDeleteById() {
+        insertDeletedCard();
+        if (repository.existsByIdAndOwner(DELETED_ID, OWNER)) {
+            repository.deleteById(DELETED_ID);
+            return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean deleteConditional() {
+        insertDeletedCard();
+        return service.delete(DELETED_ID, OWNER);
+    }
+
+    private void insertDeletedCard() {
+        jdbcTemplate.update("INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (?, ?, ?)", DELETED_ID, 1.00, OWNER);
+        jdbcTemplate.update("UPDATE CASH_CARD_SUMMARY SET CARD_COUNT = CARD_COUNT + 1, TOTAL_AMOUNT = TOTAL_AMOUNT + 1.00 WHERE OWNER = ?", OWNER);
+    }
+
+    private double nextAmount() {
+        amount += 0.01;
+        return amount;
+    }
+}
@@ -0,0 +1,64 @@
+package backend.cashcard.benchmark;
+
+import backend.cashcard.security.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the rate limit check of RateLimitFilter, per request: the bucket lookup and its CAS.
+ *
+ * principals=1 has every thread on the same bucket (worst case contention), principals=10000 spreads them.
+ * allowed=true keeps the buckets from ever running out, allowed=false rejects every request past the burst.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({"1", "10000"})
+    public int principals;
+
+    @Param({"true", "false"})
+    public boolean allowed;
+
+    private RateLimiter rateLimiter;
+    private String[] names;
+
+    @Setup
+    public void setUp() {
+        double perSecond = allowed ? 1e9 : 1;
+        int burst = allowed ? 1_000_000 : 1;
+        rateLimiter = new RateLimiter(perSecond, burst, perSecond, burst, 100_000);
+        names = new String[principals];
+        for (int i = 0; i < principals; i++) {
+            names[i] = "principal-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public long tryAcquire(Cursor cursor) {
+        String principal = names[cursor.next++ % names.length];
+        return rateLimiter.tryAcquire(principal, RateLimiter.RequestClass.READ);
+    }
+}
@@ -0,0 +1,251 @@
+package backend.cashcard.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load driver: keeps N requests in flight against a running instance (one connection each)
+ * for a fixed duration and prints throughput and latency percentiles as one JSON line.
+ * It only needs a base URL, so it can drive the servlet service as well as cashcard-reactive.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=backend.cashcard.load.LoadDriver \
+ *     -Dbenchmark.args="--url=http://localhost:8081 --connections=1000 --duration=30"
+ *
+ * With --slow-clients=N, N extra connections keep POSTing a card whose body is sent one byte every
+ * --trickle-ms milliseconds. The server reads that body with a blocking read, so on platform threads each
+ * slow client holds one of Tomcat's 200 worker threads, while on virtual threads it only holds a parked
+ * virtual thread. The reported percentiles are those of the regular connections, next to how many slow
+ * requests completed.
+ */
+public class LoadDriver {
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = parse(args);
+        URI target = URI.create(options.getOrDefault("url", "http://localhost:8081")
+                + options.getOrDefault("path", "/cashcards/99"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "1000"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "5")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "30")));
+        String credentials = options.getOrDefault("user", "felix") + ":" + options.getOrDefault("password", "abc123");
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(target)
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)))
+                .GET()
+                .build();
+
+        int slowClients = Integer.parseInt(options.getOrDefault("slow-clients", "0"));
+        long trickleMillis = Long.parseLong(options.getOrDefault("trickle-ms", "200"));
+        SlowClients slow = new SlowClients(target, credentials, slowClients, trickleMillis);
+        slow.start();
+
+        run(client, request, connections, warmup, null);
+        Result result = new Result(connections);
+        long slowBefore = slow.completed.get();
+        run(client, request, connections, duration, result);
+        long slowCompleted = slow.completed.get() - slowBefore;
+        slow.stop();
+        System.out.println(result.toJson(target, duration, slowClients, slowCompleted));
+    }
+
+    /**
+     * Every connection sends its next request as soon as the previous response arrived, until the deadline.
+     */
+    private static void run(HttpClient client, HttpRequest request, int connections, Duration duration, Result result)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            Latencies latencies = result != null ? result.latencies[i] : null;
+            send(client, request, deadline, latencies, result, done);
+        }
+        done.await();
+    }
+
+    private static void send(HttpClient client, HttpRequest request, long deadline,
+                             Latencies latencies, Result result, CountDownLatch done) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            done.countDown();
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            if (result != null) {
+                if (failure != null || response.statusCode() >= 400) {
+                    result.errors.incrementAndGet();
+                } else {
+                    latencies.add(System.nanoTime() - start);
+                }
+            }
+            send(client, request, deadline, latencies, result, done);
+        });
+    }
+
+    /**
+     * Connections that send POST /cashcards with a trickled body, each on its own (daemon) platform thread,
+     * so the driver itself still runs on JDK 17.
+     */
+    static final class SlowClients {
+        private static final byte[] BODY = "{\"amount\":1.00}".getBytes(StandardCharsets.US_ASCII);
+
+        final AtomicLong completed = new AtomicLong();
+        private final URI target;
+        private final String authorization;
+        private final long trickleMillis;
+        private final List<Thread> threads = new ArrayList<>();
+        private volatile boolean running = true;
+
+        SlowClients(URI target, String credentials, int count, long trickleMillis) {
+            this.target = target;
+            this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+            this.trickleMillis = trickleMillis;
+            for (int i = 0; i < count; i++) {
+                Thread thread = new Thread(this::loop, "slow-client-" + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+
+        void start() {
+            threads.forEach(Thread::start);
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        private void loop() {
+            byte[] head = ("POST /cashcards HTTP/1.1\r\n"
+                    + "Host: " + target.getHost() + ":" + target.getPort() + "\r\n"
+                    + "Authorization: " + authorization + "\r\n"
+                    + "Content-Type: application/json\r\n"
+                    + "Content-Length: " + BODY.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            while (running) {
+                try (Socket socket = new Socket(target.getHost(), target.getPort())) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(head);
+                    out.flush();
+                    for (byte b : BODY) {
+                        Thread.sleep(trickleMillis);
+                        out.write(b);
+                        out.flush();
+                    }
+                    InputStream in = socket.getInputStream();
+                    while (in.read() != -1) {
+                        // drain until the server closes the connection
+                    }
+                    completed.incrementAndGet();
+                } catch (IOException e) {
+                    sleepQuietly();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void sleepQuietly() {
+            try {
+                Thread.sleep(trickleMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Latencies of one connection, only ever appended to by the response chain of that connection.
+     */
+    static final class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        /**
+         * All the latencies of the connections, sorted.
+         */
+        static long[] sorted(Iterable<Latencies> latencies) {
+            int total = 0;
+            for (Latencies l : latencies) {
+                total += l.size;
+            }
+            long[] all = new long[total];
+            int offset = 0;
+            for (Latencies l : latencies) {
+                System.arraycopy(l.values, 0, all, offset, l.size);
+                offset += l.size;
+            }
+            Arrays.sort(all);
+            return all;
+        }
+    }
+
+    static final class Result {
+        final Latencies[] latencies;
+        final AtomicLong errors = new AtomicLong();
+
+        Result(int connections) {
+            latencies = new Latencies[connections];
+            for (int i = 0; i < connections; i++) {
+                latencies[i] = new Latencies();
+            }
+        }
+
+        String toJson(URI target, Duration duration, int slowClients, long slowCompleted) {
+            long[] all = Latencies.sorted(Arrays.asList(latencies));
+            int total = all.length;
+            return String.format(Locale.ROOT,
+                    "{\"target\":\"%s\",\"connections\":%d,\"requests\":%d,\"errors\":%d,\"throughput\":%.1f,"
+                            + "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"slowClients\":%d,\"slowCompleted\":%d}",
+                    target, latencies.length, total, errors.get(), total / (double) duration.toSeconds(),
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), slowClients, slowCompleted);
+        }
+    }
+
+    /**
+     * Nearest-rank percentile of sorted latencies in nanoseconds, in milliseconds.
+     */
+    static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
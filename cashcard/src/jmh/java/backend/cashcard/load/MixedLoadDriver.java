@@ -0,0 +1,334 @@
+package backend.cashcard.load;
+
+import backend.cashcard.load.LoadDriver.Latencies;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load driver replaying a read/write mix against an instance loaded by DatasetGenerator
+ * (--spring.profiles.active=load-test), over the owners and ids of its manifest. Keeps N requests in flight
+ * for a fixed duration, after a warmup, and reports throughput and latency percentiles per endpoint as one
+ * JSON document, printed and written to --report for regression tracking.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=backend.cashcard.load.MixedLoadDriver \
+ *     -Dbenchmark.args="--manifest=dataset/manifest.csv --connections=64 --duration=60 --report=target/load-report.json"
+ *
+ * --mix gives the weight of each endpoint, get:70,list:15,put:10,post:3,delete:2 by default:
+ * - get: GET /cashcards/{id} of a card of the manifest
+ * - list: GET /cashcards?page=&size=, a page among the first --list-pages of the owner, --page-size cards each
+ * - put: PUT /cashcards/{id} of a card of the manifest, with a new amount
+ * - post: POST /cashcards, the card created is remembered for a delete
+ * - delete: DELETE /cashcards/{id} of a card created by a post of the run, a post instead while there is none
+ * The owner of each request is picked with a probability proportional to its cards, so the traffic is as skewed
+ * as the dataset. Responses of 400 and above, and failed connections, are counted as errors.
+ */
+public class MixedLoadDriver {
+
+    enum Endpoint {
+        GET("get", "GET /cashcards/{id}"),
+        LIST("list", "GET /cashcards"),
+        PUT("put", "PUT /cashcards/{id}"),
+        POST("post", "POST /cashcards"),
+        DELETE("delete", "DELETE /cashcards/{id}");
+
+        final String key;
+        final String label;
+
+        Endpoint(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    private record Created(int owner, long id) {
+    }
+
+    private final HttpClient client;
+    private final String url;
+    private final Dataset dataset;
+    private final int[] cumulativeWeights;
+    private final int pageSize;
+    private final int listPages;
+    private final Queue<Created> created = new ConcurrentLinkedQueue<>();
+
+    MixedLoadDriver(HttpClient client, String url, Dataset dataset, String mix, int pageSize, int listPages) {
+        this.client = client;
+        this.url = url;
+        this.dataset = dataset;
+        this.cumulativeWeights = parseMix(mix);
+        this.pageSize = pageSize;
+        this.listPages = listPages;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = LoadDriver.parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8081");
+        String mix = options.getOrDefault("mix", "get:70,list:15,put:10,post:3,delete:2");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "64"));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60")));
+        Dataset dataset = Dataset.read(Path.of(options.getOrDefault("manifest", "dataset/manifest.csv")),
+                options.getOrDefault("password", "load-test"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        MixedLoadDriver driver = new MixedLoadDriver(client, url, dataset, mix,
+                Integer.parseInt(options.getOrDefault("page-size", "20")),
+                Integer.parseInt(options.getOrDefault("list-pages", "10")));
+
+        driver.run(connections, warmup, null);
+        Result result = new Result(connections);
+        driver.run(connections, duration, result);
+
+        String report = result.toJson(url, mix, dataset, duration);
+        System.out.println(report);
+        String reportFile = options.get("report");
+        if (reportFile != null) {
+            Path path = Path.of(reportFile).toAbsolutePath();
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, report + System.lineSeparator());
+        }
+    }
+
+    /**
+     * Every connection sends its next request as soon as the previous response arrived, until the deadline.
+     */
+    void run(int connections, Duration duration, Result result) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch done = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            send(i, deadline, result, done);
+        }
+        done.await();
+    }
+
+    private void send(int connection, long deadline, Result result, CountDownLatch done) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            done.countDown();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint endpoint = nextEndpoint(random);
+        Created deleted = endpoint == Endpoint.DELETE ? created.poll() : null;
+        if (endpoint == Endpoint.DELETE && deleted == null) {
+            endpoint = Endpoint.POST;
+        }
+        int owner = deleted != null ? deleted.owner() : dataset.pickOwner(random);
+        HttpRequest request = request(endpoint, owner, deleted, random);
+
+        Endpoint sent = endpoint;
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+            if (failure == null && sent == Endpoint.POST && response.statusCode() == 201) {
+                response.headers().firstValue("Location").ifPresent(location ->
+                        created.add(new Created(owner, Long.parseLong(location.substring(location.lastIndexOf('/') + 1)))));
+            }
+            if (result != null) {
+                if (failure != null || response.statusCode() >= 400) {
+                    result.errors[sent.ordinal()].incrementAndGet();
+                } else {
+                    result.latencies[connection][sent.ordinal()].add(System.nanoTime() - start);
+                }
+            }
+            send(connection, deadline, result, done);
+        });
+    }
+
+    private HttpRequest request(Endpoint endpoint, int owner, Created deleted, ThreadLocalRandom random) {
+        String amount = String.format(Locale.ROOT, "{\"amount\":%.2f}", random.nextInt(50_000) / 100.0);
+        return switch (endpoint) {
+            case GET -> dataset.request(url + "/cashcards/" + dataset.pickCard(owner, random), owner).GET().build();
+            case LIST -> {
+                int pages = Math.max(1, Math.min(listPages, (dataset.cards[owner] + pageSize - 1) / pageSize));
+                yield dataset.request(url + "/cashcards?page=" + random.nextInt(pages) + "&size=" + pageSize, owner).GET().build();
+            }
+            case PUT -> dataset.request(url + "/cashcards/" + dataset.pickCard(owner, random), owner)
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(amount))
+                    .build();
+            case POST -> dataset.request(url + "/cashcards", owner)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(amount))
+                    .build();
+            case DELETE -> dataset.request(url + "/cashcards/" + deleted.id(), owner).DELETE().build();
+        };
+    }
+
+    private Endpoint nextEndpoint(ThreadLocalRandom random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (Endpoint endpoint : Endpoint.values()) {
+            if (value < cumulativeWeights[endpoint.ordinal()]) {
+                return endpoint;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    static int[] parseMix(String mix) {
+        int[] weights = new int[Endpoint.values().length];
+        for (String entry : mix.split(",")) {
+            String[] keyAndWeight = entry.trim().split(":");
+            Endpoint endpoint = null;
+            for (Endpoint candidate : Endpoint.values()) {
+                if (candidate.key.equals(keyAndWeight[0])) {
+                    endpoint = candidate;
+                }
+            }
+            if (endpoint == null || keyAndWeight.length != 2) {
+                throw new IllegalArgumentException("Unknown mix entry " + entry + ", expected get|list|put|post|delete:<weight>");
+            }
+            weights[endpoint.ordinal()] = Integer.parseInt(keyAndWeight[1]);
+        }
+        int[] cumulative = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cumulative[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix " + mix + " has no weight");
+        }
+        return cumulative;
+    }
+
+    /**
+     * The owners of the manifest of DatasetGenerator, their card ranges and Authorization headers.
+     */
+    static final class Dataset {
+        final String[] owners;
+        final long[] firstIds;
+        final int[] cards;
+        private final String[] authorizations;
+        // cards of the owners before and including each one, for the weighted pick
+        private final long[] cumulativeCards;
+
+        private Dataset(List<String[]> rows, String password) {
+            int count = rows.size();
+            owners = new String[count];
+            firstIds = new long[count];
+            cards = new int[count];
+            authorizations = new String[count];
+            cumulativeCards = new long[count];
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                String[] row = rows.get(i);
+                owners[i] = row[0];
+                firstIds[i] = Long.parseLong(row[1]);
+                cards[i] = Integer.parseInt(row[2]);
+                authorizations[i] = "Basic " + Base64.getEncoder()
+                        .encodeToString((owners[i] + ":" + password).getBytes(StandardCharsets.UTF_8));
+                total += cards[i];
+                cumulativeCards[i] = total;
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException("The manifest has no card");
+            }
+        }
+
+        static Dataset read(Path manifest, String password) throws IOException {
+            List<String[]> rows = new ArrayList<>();
+            for (String line : Files.readAllLines(manifest)) {
+                if (!line.isBlank() && !line.startsWith("owner,")) {
+                    rows.add(line.split(","));
+                }
+            }
+            return new Dataset(rows, password);
+        }
+
+        long totalCards() {
+            return cumulativeCards[cumulativeCards.length - 1];
+        }
+
+        int pickOwner(ThreadLocalRandom random) {
+            long card = random.nextLong(totalCards());
+            int low = 0;
+            int high = cumulativeCards.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulativeCards[middle] > card) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return low;
+        }
+
+        long pickCard(int owner, ThreadLocalRandom random) {
+            return firstIds[owner] + random.nextInt(cards[owner]);
+        }
+
+        HttpRequest.Builder request(String uri, int owner) {
+            return HttpRequest.newBuilder(URI.create(uri)).header("Authorization", authorizations[owner]);
+        }
+    }
+
+    static final class Result {
+        final Latencies[][] latencies;
+        final AtomicLong[] errors = new AtomicLong[Endpoint.values().length];
+
+        Result(int connections) {
+            latencies = new Latencies[connections][Endpoint.values().length];
+            for (int i = 0; i < connections; i++) {
+                for (int e = 0; e < Endpoint.values().length; e++) {
+                    latencies[i][e] = new Latencies();
+                }
+            }
+            for (int e = 0; e < errors.length; e++) {
+                errors[e] = new AtomicLong();
+            }
+        }
+
+        String toJson(String url, String mix, Dataset dataset, Duration duration) {
+            double seconds = duration.toSeconds();
+            List<Latencies> all = new ArrayList<>();
+            long totalErrors = 0;
+            StringJoiner endpoints = new StringJoiner(",", "[", "]");
+            for (Endpoint endpoint : Endpoint.values()) {
+                List<Latencies> ofEndpoint = new ArrayList<>();
+                for (Latencies[] ofConnection : latencies) {
+                    ofEndpoint.add(ofConnection[endpoint.ordinal()]);
+                }
+                all.addAll(ofEndpoint);
+                long[] sorted = Latencies.sorted(ofEndpoint);
+                long endpointErrors = errors[endpoint.ordinal()].get();
+                totalErrors += endpointErrors;
+                endpoints.add(String.format(Locale.ROOT,
+                        "{\"endpoint\":\"%s\",\"requests\":%d,\"errors\":%d,\"throughput\":%.1f,"
+                                + "\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,\"maxMs\":%.3f}",
+                        endpoint.label, sorted.length, endpointErrors, sorted.length / seconds,
+                        LoadDriver.percentile(sorted, 0.50), LoadDriver.percentile(sorted, 0.99),
+                        LoadDriver.percentile(sorted, 0.999), LoadDriver.percentile(sorted, 1.0)));
+            }
+            long[] sorted = Latencies.sorted(all);
+            return String.format(Locale.ROOT,
+                    "{\"target\":\"%s\",\"mix\":\"%s\",\"owners\":%d,\"cards\":%d,\"connections\":%d,\"durationSeconds\":%d,"
+                            + "\"requests\":%d,\"errors\":%d,\"throughput\":%.1f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"p999Ms\":%.3f,"
+                            + "\"endpoints\":%s}",
+                    url, mix, dataset.owners.length, dataset.totalCards(), latencies.length, duration.toSeconds(),
+                    sorted.length, totalErrors, sorted.length / seconds, LoadDriver.percentile(sorted, 0.50),
+                    LoadDriver.percentile(sorted, 0.99), LoadDriver.percentile(sorted, 0.999), endpoints);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package backend.cashcard.audit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Hands every request to /cashcards/** to the AuditLog once it is answered: principal, method, the mapped path
+ * (/cashcards/{id}/debit rather than /cashcards/99/debit), the card id of the path, status and latency.
+ *
+ * Sits before Basic Auth in the security filter chain so that rejected credentials (401), missing roles (403)
+ * and throttled requests (429) are recorded too. Streaming responses (the export, the change feed) are recorded
+ * when the handler returns, not when the stream ends.
+ */
+public class AuditFilter extends OncePerRequestFilter {
+
+    private final AuditLog auditLog;
+
+    public AuditFilter(AuditLog auditLog) {
+        this.auditLog = auditLog;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getServletPath().startsWith("/cashcards");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            int status = failed ? HttpStatus.INTERNAL_SERVER_ERROR.value() : response.getStatus();
+            auditLog.publish(principal(), request.getMethod(), path(request), cardId(request), status, System.nanoTime() - start);
+        }
+    }
+
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private static String path(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : request.getServletPath();
+    }
+
+    private static long cardId(HttpServletRequest request) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables != null ? variables.get("id") : null;
+        if (id == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package backend.cashcard.audit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Access log of /cashcards/** (see AuditFilter), one JSON line per request in a size-rolled file:
+ * {"time":"...","principal":"felix","method":"GET","path":"/cashcards/{id}","id":99,"status":200,"latencyMicros":412}
+ *
+ * Request threads never touch the file. publish claims a slot of a preallocated ring with a compare-and-set
+ * on the claim sequence, fills in its fields and releases it by writing its sequence, nothing is allocated.
+ * A single writer thread takes the released slots in order, formats them, frees them, then writes them
+ * with one channel write per batch.
+ *
+ * When the ring is full (the writer fell behind), back-pressure DROP counts the event as dropped and returns,
+ * BLOCK makes the request thread wait for a free slot.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.audit.enabled", havingValue = "true", matchIfMissing = true)
+public class AuditLog implements MeterBinder, DisposableBean {
+
+    public enum BackPressure {
+        DROP, BLOCK
+    }
+
+    static final String FILE_NAME = "audit.log";
+
+    private static final DateTimeFormatter SECOND = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private static final DateTimeFormatter ROLLED_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final int MAX_BATCH = 4096;
+
+    /*
+    * One event. The fields are written by the producer that claimed the slot, then published by the volatile
+    * write of sequence, which the writer reads before the fields.
+    */
+    private static final class Slot {
+        volatile long sequence = -1;
+        long time;
+        String principal;
+        String method;
+        String path;
+        long cardId;
+        int status;
+        long latencyNanos;
+    }
+
+    private final Slot[] slots;
+
+    private final int mask;
+
+    private final BackPressure backPressure;
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    // every slot below it has been formatted and can be claimed again
+    private volatile long consumed;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final Path directory;
+
+    private final long maxFileSize;
+
+    private final int maxHistory;
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    // state of the writer thread: the file, the output buffer and the last second formatted
+    private FileChannel channel;
+
+    private long fileSize;
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(1 << 20);
+
+    private long second = Long.MIN_VALUE;
+
+    private String secondText;
+
+    public AuditLog(@Value("${cashcard.audit.directory:audit}") Path directory,
+                    @Value("${cashcard.audit.buffer-size:65536}") int bufferSize,
+                    @Value("${cashcard.audit.back-pressure:drop}") BackPressure backPressure,
+                    @Value("${cashcard.audit.max-file-size:64MB}") DataSize maxFileSize,
+                    @Value("${cashcard.audit.max-history:10}") int maxHistory) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize - 1, 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = capacity - 1;
+        this.backPressure = backPressure;
+        this.directory = directory;
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxHistory = maxHistory;
+        try {
+            Files.createDirectories(directory);
+            openFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.writer = new Thread(this::write, "cashcard-audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues an event, cardId is -1 for requests without a card id in the path and principal null
+     * for unauthenticated ones.
+     *
+     * @return false when the event was dropped
+     */
+    public boolean publish(String principal, String method, String path, long cardId, int status, long latencyNanos) {
+        long sequence;
+        if (backPressure == BackPressure.DROP) {
+            do {
+                sequence = claimed.get();
+                if (sequence - consumed >= slots.length) {
+                    dropped.increment();
+                    return false;
+                }
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+        } else {
+            sequence = claimed.getAndIncrement();
+            while (sequence - consumed >= slots.length) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+        Slot slot = slots[(int) sequence & mask];
+        slot.time = System.currentTimeMillis();
+        slot.principal = principal;
+        slot.method = method;
+        slot.path = path;
+        slot.cardId = cardId;
+        slot.status = status;
+        slot.latencyNanos = latencyNanos;
+        slot.sequence = sequence;
+        return true;
+    }
+
+    /**
+     * The file being written to.
+     */
+    public Path file() {
+        return directory.resolve(FILE_NAME);
+    }
+
+    private void write() {
+        StringBuilder lines = new StringBuilder(256 * 64);
+        long next = 0;
+        while (running) {
+            int batch = 0;
+            Slot slot;
+            while (batch < MAX_BATCH && (slot = slots[(int) next & mask]).sequence == next) {
+                format(slot, lines);
+                slot.principal = null;
+                next++;
+                batch++;
+            }
+            if (batch == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            consumed = next;
+            writeLines(lines, batch);
+            lines.setLength(0);
+        }
+    }
+
+    private void writeLines(CharSequence lines, int events) {
+        CharBuffer chars = CharBuffer.wrap(lines);
+        encoder.reset();
+        try {
+            CoderResult result;
+            do {
+                result = encoder.encode(chars, bytes, true);
+                if (result.isUnderflow()) {
+                    encoder.flush(bytes);
+                }
+                bytes.flip();
+                while (bytes.hasRemaining()) {
+                    fileSize += channel.write(bytes);
+                }
+                bytes.clear();
+            } while (result.isOverflow());
+            written.add(events);
+            if (fileSize >= maxFileSize) {
+                roll();
+            }
+        } catch (IOException e) {
+            // the disk is full or gone: the batch is lost, the next one tries again
+            bytes.clear();
+            dropped.add(events);
+        }
+    }
+
+    private void format(Slot slot, StringBuilder lines) {
+        long millis = Math.floorMod(slot.time, 1000L);
+        if (slot.time - millis != second) {
+            second = slot.time - millis;
+            secondText = SECOND.format(Instant.ofEpochMilli(second));
+        }
+        lines.append("{\"time\":\"").append(secondText).append('.')
+                .append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10))
+                .append("Z\",\"principal\":");
+        if (slot.principal == null) {
+            lines.append("null");
+        } else {
+            appendString(slot.principal, lines);
+        }
+        lines.append(",\"method\":\"").append(slot.method)
+                .append("\",\"path\":");
+        appendString(slot.path, lines);
+        lines.append(",\"id\":");
+        if (slot.cardId < 0) {
+            lines.append("null");
+        } else {
+            lines.append(slot.cardId);
+        }
+        lines.append(",\"status\":").append(slot.status)
+                .append(",\"latencyMicros\":").append(TimeUnit.NANOSECONDS.toMicros(slot.latencyNanos))
+                .append("}\n");
+    }
+
+    private static void appendString(String value, StringBuilder lines) {
+        lines.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                lines.append('\\').append(c);
+            } else if (c < 0x20) {
+                lines.append(String.format("\\u%04x", (int) c));
+            } else {
+                lines.append(c);
+            }
+        }
+        lines.append('"');
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /*
+    * audit.log becomes audit-<utc time>.log, the oldest rolled files beyond max-history are deleted.
+    */
+    private void roll() throws IOException {
+        channel.close();
+        Files.move(file(), directory.resolve("audit-" + ROLLED_SUFFIX.format(Instant.now()) + ".log"));
+        openFile();
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> rolled = files
+                    .filter(file -> file.getFileName().toString().startsWith("audit-"))
+                    .sorted()
+                    .toList();
+            for (int i = 0; i < rolled.size() - maxHistory; i++) {
+                Files.deleteIfExists(rolled.get(i));
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cashcard.audit.dropped", dropped, LongAdder::sum)
+                .description("Audit events lost because the buffer was full or the file could not be written")
+                .register(registry);
+        FunctionCounter.builder("cashcard.audit.written", written, LongAdder::sum)
+                .description("Audit events written to the audit log")
+                .register(registry);
+        Gauge.builder("cashcard.audit.backlog", this, log -> log.claimed.get() - log.consumed)
+                .description("Audit events waiting for the writer")
+                .register(registry);
+    }
+
+    /*
+    * The web server is stopped by now, the events already released are written before the file is closed.
+    */
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        StringBuilder lines = new StringBuilder();
+        long next = consumed;
+        int batch = 0;
+        Slot slot;
+        while ((slot = slots[(int) next & mask]).sequence == next) {
+            format(slot, lines);
+            next++;
+            batch++;
+        }
+        consumed = next;
+        if (batch > 0) {
+            writeLines(lines, batch);
+        }
+        channel.close();
+    }
+}
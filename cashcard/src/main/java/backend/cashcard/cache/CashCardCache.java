@@ -0,0 +1,139 @@
+package backend.cashcard.cache;
+
+import backend.cashcard.entity.CashCard;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded read-through cache in front of CashCardRepository.findByIdAndOwner.
+ * Entries are keyed by (owner, id), so a principal can only ever be served a card
+ * that was loaded for that same principal.
+ * Misses (unknown id or a card owned by someone else) are never cached.
+ *
+ * Hit/miss/eviction counters are published through Micrometer as cache.gets, cache.evictions, ...
+ * with the tag cache=cashcards (see /actuator/metrics).
+ *
+ * The loader (a JDBC query) runs outside of any cache lock: Caffeine's cache.get(key, loader) computes
+ * inside a synchronized bin of its ConcurrentHashMap, which pins the carrier thread of a virtual thread
+ * for the whole round trip to the database. Two concurrent misses on the same card may both query it.
+ * An invalidate racing with such a load wins: every key hashes to a stripe whose generation is bumped
+ * before the entry is removed, and a loaded card is only stored if its stripe generation did not move.
+ */
+@Component
+public class CashCardCache implements MeterBinder {
+
+    public static final String CACHE_NAME = "cashcards";
+
+    private static final int GENERATION_STRIPES = 64;
+
+    private final Cache<Key, CashCard> cache;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public CashCardCache(@Value("${cashcard.cache.maximum-size:10000}") long maximumSize,
+                         @Value("${cashcard.cache.ttl:30s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached card of the owner, or calls the loader and caches its result.
+     * A null result from the loader is returned as-is and not cached.
+     */
+    public CashCard get(String owner, Long id, BiFunction<Long, String, CashCard> loader) {
+        Key key = new Key(owner, id);
+        CashCard cashCard = cache.getIfPresent(key);
+        if (cashCard != null) {
+            return cashCard;
+        }
+
+        int stripe = stripe(key);
+        long generation = generations.get(stripe);
+        CashCard loaded = loader.apply(id, owner);
+        if (loaded != null) {
+            cache.asMap().compute(key, (k, current) -> generations.get(stripe) == generation ? loaded : current);
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns the cards of the owner that exist, by id: the cached ones, and the others loaded with
+     * a single call to the loader, which are then cached the same way get() does.
+     */
+    public Map<Long, CashCard> getAll(String owner, Collection<Long> ids,
+                                      BiFunction<String, Collection<Long>, List<CashCard>> loader) {
+        Map<Long, CashCard> found = new HashMap<>();
+        Map<Long, Long> generationsOfMisses = new HashMap<>();
+        for (Long id : ids) {
+            Key key = new Key(owner, id);
+            CashCard cashCard = cache.getIfPresent(key);
+            if (cashCard != null) {
+                found.put(id, cashCard);
+            } else {
+                generationsOfMisses.put(id, generations.get(stripe(key)));
+            }
+        }
+        if (generationsOfMisses.isEmpty()) {
+            return found;
+        }
+
+        for (CashCard loaded : loader.apply(owner, generationsOfMisses.keySet())) {
+            Key key = new Key(owner, loaded.getId());
+            int stripe = stripe(key);
+            long generation = generationsOfMisses.get(loaded.getId());
+            cache.asMap().compute(key, (k, current) -> generations.get(stripe) == generation ? loaded : current);
+            found.put(loaded.getId(), loaded);
+        }
+        return found;
+    }
+
+    /**
+     * Returns the cached card of the owner, or null without loading anything.
+     */
+    public CashCard getIfPresent(String owner, Long id) {
+        return cache.getIfPresent(new Key(owner, id));
+    }
+
+    /**
+     * Drops the card of the given owner, used after an update or a delete of that card.
+     */
+    public void invalidate(String owner, Long id) {
+        Key key = new Key(owner, id);
+        generations.incrementAndGet(stripe(key));
+        cache.invalidate(key);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME, Tags.empty());
+    }
+
+    private static int stripe(Key key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private record Key(String owner, Long id) {
+    }
+}
@@ -0,0 +1,16 @@
+package backend.cashcard.controller;
+
+/**
+ * minAmount/maxAmount filter of GET /cashcards, a missing bound is open.
+ */
+record AmountRange(Double min, Double max) {
+
+    AmountRange {
+        min = min != null ? min : -Double.MAX_VALUE;
+        max = max != null ? max : Double.MAX_VALUE;
+    }
+
+    boolean isUnbounded() {
+        return min == -Double.MAX_VALUE && max == Double.MAX_VALUE;
+    }
+}
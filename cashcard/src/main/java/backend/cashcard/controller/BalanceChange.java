@@ -0,0 +1,11 @@
+package backend.cashcard.controller;
+
+/**
+ * Request body of POST /cashcards/{id}/debit and /credit, e.g. {"amount": 12.50}
+ */
+record BalanceChange(Double amount) {
+
+    boolean isValid() {
+        return amount != null && amount > 0 && Double.isFinite(amount);
+    }
+}
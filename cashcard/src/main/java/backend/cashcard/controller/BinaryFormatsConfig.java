@@ -0,0 +1,65 @@
+package backend.cashcard.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/*
+* Binary alternatives to JSON for service-to-service calls, picked by the Accept header of a request
+* (and by Content-Type for request bodies) on every endpoint that speaks JSON:
+* - application/x-jackson-smile: field names, and short strings such as the owner, are written once per
+*   payload, their repetitions are back-references of a byte or two.
+* - application/cbor (RFC 8949), for clients without a Smile codec.
+* Both use copies of the application ObjectMapper, so annotations and Spring Boot settings apply the same way.
+* JSON stays the default when Accept is missing or * / *.
+* Every response of /cashcards says Vary: Accept, 304s included, so that a shared cache keeps the formats apart.
+* The bounded ones are buffered to get a Content-Length, the gzip threshold depends on it (see ContentLengthFilter).
+*/
+@Configuration
+class BinaryFormatsConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                return true;
+            }
+        }).addPathPatterns("/cashcards", "/cashcards/**");
+    }
+
+    @Bean
+    FilterRegistrationBean<ContentLengthFilter> contentLengthFilter() {
+        return new FilterRegistrationBean<>(new ContentLengthFilter());
+    }
+
+    @Bean
+    SmileFactory cashCardSmileFactory() {
+        return SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+    }
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectMapper objectMapper, SmileFactory cashCardSmileFactory) {
+        return new MappingJackson2SmileHttpMessageConverter(objectMapper.copyWith(cashCardSmileFactory));
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory()));
+    }
+}
@@ -1,48 +1,144 @@
 package backend.cashcard.controller;
 
+import backend.cashcard.cache.CashCardCache;
 import backend.cashcard.entity.CashCard;
+import backend.cashcard.entity.CashCardSummary;
+import backend.cashcard.feed.CashCardChangeFeed;
+import backend.cashcard.feed.CashCardChangeFeed.ChangeType;
+import backend.cashcard.ledger.CashCardLedger;
+import backend.cashcard.repository.CashCardFields;
 import backend.cashcard.repository.CashCardRepository;
-import org.springframework.data.domain.Page;
+import backend.cashcard.service.CashCardExportService;
+import backend.cashcard.service.CashCardService;
+import backend.cashcard.service.CashCardService.BalanceChangeResult;
+import backend.cashcard.service.CashCardSummaryService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.DisconnectedClientHelper;
+import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
 import java.net.URI;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+/*
+* No logging on the request path: latency per endpoint and status is recorded by Micrometer
+* (http.server.requests), repository calls by spring.data.repository.invocations,
+* see /actuator/metrics.
+*/
 @RestController
 @RequestMapping("/cashcards")
 class CashCardController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
     private final CashCardRepository cashCardRepository;
 
+    private final CashCardCache cashCardCache;
+
+    private final CashCardExportService cashCardExportService;
+
+    private final CashCardChangeFeed cashCardChangeFeed;
+
+    private final CashCardService cashCardService;
+
+    private final CashCardSummaryService cashCardSummaryService;
+
+    // null unless cashcard.ledger.enabled
+    private final CashCardLedger cashCardLedger;
+
+    private final int maxBatchSize;
+
+    private final int maxLookupIds;
+
     /**
      * constructor injection
      * Classes with a single constructor can omit the @Autowired annotation.
      * */
-    private CashCardController(CashCardRepository cashCardRepository) {
+    private CashCardController(CashCardRepository cashCardRepository,
+                               CashCardCache cashCardCache,
+                               CashCardExportService cashCardExportService,
+                               CashCardChangeFeed cashCardChangeFeed,
+                               CashCardService cashCardService,
+                               CashCardSummaryService cashCardSummaryService,
+                               ObjectProvider<CashCardLedger> cashCardLedger,
+                               @Value("${cashcard.batch.max-size:10000}") int maxBatchSize,
+                               @Value("${cashcard.lookup.max-ids:100}") int maxLookupIds) {
         this.cashCardRepository = cashCardRepository;
+        this.cashCardCache = cashCardCache;
+        this.cashCardExportService = cashCardExportService;
+        this.cashCardChangeFeed = cashCardChangeFeed;
+        this.cashCardService = cashCardService;
+        this.cashCardSummaryService = cashCardSummaryService;
+        this.cashCardLedger = cashCardLedger.getIfAvailable();
+        this.maxBatchSize = maxBatchSize;
+        this.maxLookupIds = maxLookupIds;
     }
 
+    /*
+    * Every card carries a weak ETag derived from its version.
+    * A matching If-None-Match is answered with 304 by Spring before the body is serialized,
+    * and when the card isn't cached only its version is read from the database to decide that.
+    * With the ledger enabled the card comes from its in-memory index, the rows may be behind it.
+    */
     @GetMapping("/{id}")
-    private ResponseEntity<CashCard> findById(@PathVariable Long id, Principal principal) {
-        System.err.println("endpoint reached: http://localhost:8081/cashcards/99");
-
+    private ResponseEntity<CashCard> findById(@PathVariable Long id,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                              Principal principal) {
         //Optional<CashCard> cashCardOptional = cashCardRepository.findById(id);
         //return cashCardOptional.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
 
         /*
         * principal.getName() will return the username provided from Basic Auth.
+        * Hot cards are served from the (owner, id) cache, the repository is only hit on a miss.
         */
-        Optional<CashCard> cashCardOptional = Optional.ofNullable(cashCardRepository.findByIdAndOwner(id, principal.getName()));
+        if (cashCardLedger != null) {
+            CashCard cashCard = cashCardLedger.find(id, principal.getName());
+            if (cashCard == null) return ResponseEntity.notFound().build();
+            return ResponseEntity.ok().eTag(CashCardETags.of(cashCard)).body(cashCard);
+        }
+
+        CashCard cached = cashCardCache.getIfPresent(principal.getName(), id);
+        if (cached == null && ifNoneMatch != null) {
+            Optional<Long> version = cashCardRepository.findVersionByIdAndOwner(id, principal.getName());
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String eTag = CashCardETags.of(id, version.get());
+            if (CashCardETags.matches(ifNoneMatch, eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+        }
+
+        Optional<CashCard> cashCardOptional = Optional.ofNullable(cached != null
+                ? cached
+                : cashCardCache.get(principal.getName(), id, cashCardRepository::findByIdAndOwner));
 
         if(cashCardOptional.isPresent()){
-            return ResponseEntity.ok(cashCardOptional.get());
+            return ResponseEntity.ok()
+                    .eTag(CashCardETags.of(cashCardOptional.get()))
+                    .body(cashCardOptional.get());
         } else {
             return ResponseEntity.notFound().build();
         }
@@ -53,13 +149,25 @@ class CashCardController {
         return ResponseEntity.ok(cashCardRepository.findAll());
     }*/
 
+    /*
+    * Two ways of paging through the cards of the principal:
+    * - page/size/sort (offset): kept for compatibility, backed by a Slice so no COUNT(*) is issued.
+    * - cursor/size (keyset): pass an empty cursor for the first page, then the X-Next-Cursor header
+    *   of the previous response. Always sorted by amount then id, the sort parameter is ignored.
+    * Both accept minAmount/maxAmount (inclusive), a range scan on the (owner, amount, id) index.
+    * Each page has an ETag combining the versions of its cards, a poll of an unchanged page gets a 304
+    * without serializing it.
+    */
     @GetMapping
-    private ResponseEntity<List<CashCard>> findAll(Pageable pageable, Principal principal) {
-        int size = pageable.getPageSize();
-        int number = pageable.getPageNumber();
-        Sort sorting = pageable.getSort();
-        String metaData = "?page=" + number + "&size=" + size + "&sort=" + sorting;
-        System.err.println("endpoint reached: http://localhost:8081/cashcards" + metaData);
+    private ResponseEntity<List<CashCard>> findAll(Pageable pageable,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Double minAmount,
+                                                   @RequestParam(required = false) Double maxAmount,
+                                                   Principal principal) {
+        AmountRange range = new AmountRange(minAmount, maxAmount);
+        if (cursor != null) {
+            return findAllAfter(cursor, pageable.getPageSize(), range, principal);
+        }
 
         /*
             Page<CashCard> page = cashCardRepository.findAll(
@@ -70,49 +178,345 @@ class CashCardController {
                 ));
         */
 
-        Page<CashCard> page = cashCardRepository.findByOwner(
-                principal.getName(),
-                PageRequest.of(
-                        pageable.getPageNumber(),
-                        pageable.getPageSize(),
-                        pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))
-                )
+        PageRequest pageRequest = PageRequest.of(
+                pageable.getPageNumber(),
+                pageable.getPageSize(),
+                pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))
         );
-        return ResponseEntity.ok(page.getContent());
+        Slice<CashCard> page = range.isUnbounded()
+                ? cashCardRepository.findByOwner(principal.getName(), pageRequest)
+                : cashCardRepository.findByOwnerAndAmountBetween(principal.getName(), range.min(), range.max(), pageRequest);
+        return ResponseEntity.ok()
+                .eTag(CashCardETags.ofPage(page.getContent(), page.hasNext()))
+                .body(page.getContent());
+    }
+
+    /*
+    * Sparse fieldsets: GET /cashcards/{id}?fields=id,amount and GET /cashcards?fields=... (offset or cursor pages)
+    * return only the listed fields (id, amount, owner), in that order. Only those columns are selected,
+    * as plain values in a read-only transaction, no entity is loaded. ETags are the same as without fields.
+    */
+    @GetMapping(path = "/{id}", params = "fields")
+    private ResponseEntity<CashCardFields> findFieldsById(@PathVariable Long id, @RequestParam List<String> fields, Principal principal) {
+        List<String> requestedFields = requestedFields(fields);
+        if (requestedFields == null) return ResponseEntity.badRequest().build();
+
+        CashCard cached = cashCardLedger != null
+                ? cashCardLedger.find(id, principal.getName())
+                : cashCardCache.getIfPresent(principal.getName(), id);
+        CashCardFields cashCard = cached != null
+                ? CashCardFields.of(cached, requestedFields)
+                : cashCardRepository.findFieldsByIdAndOwner(id, principal.getName(), requestedFields);
+        if (cashCard == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .eTag(CashCardETags.of(cashCard.id(), cashCard.version()))
+                .body(cashCard);
+    }
+
+    @GetMapping(params = {"fields", "!ids"})
+    private ResponseEntity<List<CashCardFields>> findAllFields(Pageable pageable,
+                                                               @RequestParam List<String> fields,
+                                                               @RequestParam(required = false) String cursor,
+                                                               @RequestParam(required = false) Double minAmount,
+                                                               @RequestParam(required = false) Double maxAmount,
+                                                               Principal principal) {
+        List<String> requestedFields = requestedFields(fields);
+        if (requestedFields == null) return ResponseEntity.badRequest().build();
+
+        if (cursor == null) {
+            PageRequest pageRequest = PageRequest.of(
+                    pageable.getPageNumber(),
+                    pageable.getPageSize(),
+                    pageable.getSortOr(Sort.by(Sort.Direction.ASC, "amount"))
+            );
+            List<CashCardFields> page = cashCardRepository.findFieldsByOwner(
+                    principal.getName(), requestedFields, minAmount, maxAmount, pageRequest);
+            // no next page indicator in an offset page of fields, the client just asks for the next one
+            return ResponseEntity.ok()
+                    .eTag(CashCardETags.ofFieldsPage(page, false))
+                    .body(page);
+        }
+
+        CashCardCursor after = null;
+        if (!cursor.isEmpty()) {
+            try {
+                after = CashCardCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        int size = pageable.getPageSize();
+        AmountRange range = new AmountRange(minAmount, maxAmount);
+        List<CashCardFields> cashCards = cashCardRepository.findFieldsByOwnerAfter(
+                principal.getName(), requestedFields, range.min(), range.max(),
+                after != null ? after.amount() : null, after != null ? after.id() : null, Limit.of(size + 1));
+
+        if (cashCards.size() <= size) {
+            return ResponseEntity.ok()
+                    .eTag(CashCardETags.ofFieldsPage(cashCards, false))
+                    .body(cashCards);
+        }
+        List<CashCardFields> page = cashCards.subList(0, size);
+        return ResponseEntity.ok()
+                .eTag(CashCardETags.ofFieldsPage(page, true))
+                .header(NEXT_CURSOR_HEADER, CashCardCursor.of(page.get(size - 1)).encode())
+                .body(page);
+    }
+
+    /*
+    * Distinct known field names in request order, null when the list is empty or has an unknown name.
+    */
+    private static List<String> requestedFields(List<String> fields) {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields) {
+            if (!CashCardFields.NAMES.contains(field.trim())) {
+                return null;
+            }
+            requested.add(field.trim());
+        }
+        return requested.isEmpty() ? null : List.copyOf(requested);
+    }
+
+    /*
+    * Multi-get: GET /cashcards?ids=99,100,101, or POST /cashcards/lookup with a JSON array of ids when the
+    * list doesn't fit in a URL. Cached cards are served from the cache, all the others are fetched with
+    * one IN query scoped to the principal (with the ledger, all of them come from the ledger).
+    * At most cashcard.lookup.max-ids ids per request.
+    */
+    @GetMapping(params = "ids")
+    private ResponseEntity<CashCardLookup> findAllById(@RequestParam List<Long> ids, Principal principal) {
+        return lookup(ids, principal);
+    }
+
+    @PostMapping("/lookup")
+    private ResponseEntity<CashCardLookup> lookupCashCards(@RequestBody List<Long> ids, Principal principal) {
+        return lookup(ids, principal);
+    }
+
+    private ResponseEntity<CashCardLookup> lookup(List<Long> ids, Principal principal) {
+        if (ids.isEmpty() || ids.size() > maxLookupIds || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        // with the ledger the balances of the cache and the table lag behind, the ledger has them all
+        Map<Long, CashCard> found = cashCardLedger != null
+                ? null
+                : cashCardCache.getAll(principal.getName(), requestedIds, cashCardRepository::findByOwnerAndIdIn);
+        List<CashCard> cashCards = new ArrayList<>(requestedIds.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requestedIds) {
+            CashCard cashCard = found != null ? found.get(id) : cashCardLedger.find(id, principal.getName());
+            if (cashCard != null) {
+                cashCards.add(cashCard);
+            } else {
+                missing.add(id);
+            }
+        }
+        return ResponseEntity.ok(new CashCardLookup(cashCards, missing));
+    }
+
+    private ResponseEntity<List<CashCard>> findAllAfter(String cursor, int size, AmountRange range, Principal principal) {
+        // one extra row tells us if there is a next page
+        Limit limit = Limit.of(size + 1);
+        List<CashCard> cashCards;
+        if (cursor.isEmpty()) {
+            cashCards = cashCardRepository.findByOwnerAndAmountBetweenOrderByAmountAscIdAsc(
+                    principal.getName(), range.min(), range.max(), limit);
+        } else {
+            CashCardCursor after;
+            try {
+                after = CashCardCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            cashCards = cashCardRepository.findByOwnerAfter(
+                    principal.getName(), after.amount(), after.id(), range.min(), range.max(), limit);
+        }
+
+        if (cashCards.size() <= size) {
+            return ResponseEntity.ok()
+                    .eTag(CashCardETags.ofPage(cashCards, false))
+                    .body(cashCards);
+        }
+        List<CashCard> page = cashCards.subList(0, size);
+        return ResponseEntity.ok()
+                .eTag(CashCardETags.ofPage(page, true))
+                .header(NEXT_CURSOR_HEADER, CashCardCursor.of(page.get(size - 1)).encode())
+                .body(page);
+    }
+
+    /*
+    * Every card of the principal as NDJSON, written while it is read from the database
+    * instead of being collected into a List first. As a sequence of Smile values when the Accept header
+    * lists application/x-jackson-smile before any JSON type, NDJSON otherwise (even when nothing matches,
+    * like before).
+    */
+    @GetMapping("/export")
+    private ResponseEntity<StreamingResponseBody> exportCashCards(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                  Principal principal) {
+        String owner = principal.getName();
+        if (prefersSmile(accept)) {
+            StreamingResponseBody body = out -> cashCardExportService.exportSmile(owner, out);
+            return ResponseEntity.ok()
+                    .contentType(SMILE)
+                    .body(body);
+        }
+        StreamingResponseBody body = out -> cashCardExportService.export(owner, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private static boolean prefersSmile(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+            if (SMILE.equalsTypeAndSubtype(mediaType)) {
+                return true;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_NDJSON) || mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /*
+    * Server-Sent Events for every change of a card of the principal, so clients don't have to poll the list.
+    * The data of an event is {"id": ...}, the card itself is fetched with a (conditional) GET.
+    * To resume after a disconnect, send the id of the last event received as the Last-Event-ID header
+    * (EventSource does it by itself) or as the lastEventId parameter. A "resync" event means changes were
+    * missed and the cards have to be reloaded.
+    */
+    @GetMapping(path = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    private SseEmitter streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+                                     @RequestParam(required = false) String lastEventId,
+                                     Principal principal) {
+        return cashCardChangeFeed.subscribe(principal.getName(), lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    }
+
+    /*
+    * A stream whose client went away ends with the IOException of the failed write, dispatched back here.
+    * The response is gone with the client, there is nothing to answer and nothing to report.
+    */
+    @ExceptionHandler(IOException.class)
+    private void handleIOException(IOException e) throws IOException {
+        if (!DisconnectedClientHelper.isClientDisconnectedException(e)) {
+            throw e;
+        }
+    }
+
+    /*
+    * Count, total, min and max amount of the cards of the principal, read from the summary row
+    * that every change keeps up to date, instead of fetching and summing all the cards.
+    */
+    @GetMapping("/summary")
+    private ResponseEntity<CashCardSummary> findSummary(Principal principal) {
+        return ResponseEntity.ok(cashCardSummaryService.find(principal.getName()));
+    }
+
+    /*
+    * Every card has an amount: the keyset cursors and the amount range filters compare it, a card without one
+    * would fall out of every page. 400 when it is missing (or not finite), on every create and update.
+    */
+    private static boolean isValidAmount(Double amount) {
+        return amount != null && Double.isFinite(amount);
     }
 
     @PostMapping
     private ResponseEntity<Void> createCashCard(@RequestBody CashCard newCashCardRequest, UriComponentsBuilder ucb, Principal principal) {
-        CashCard cashCardWithOwner = new CashCard(newCashCardRequest.getId(), newCashCardRequest.getAmount(), principal.getName());
+        if (!isValidAmount(newCashCardRequest.getAmount())) return ResponseEntity.badRequest().build();
+
+        // the id is generated by the database, an id sent by the client is ignored
+        CashCard cashCardWithOwner = new CashCard(null, newCashCardRequest.getAmount(), principal.getName());
         //CashCard savedCashCard = cashCardRepository.save(newCashCardRequest);
-        CashCard savedCashCardWithOwner = cashCardRepository.save(cashCardWithOwner);
+        CashCard savedCashCardWithOwner = cashCardService.create(cashCardWithOwner);
+        cashCardChangeFeed.publish(principal.getName(), ChangeType.CREATED, savedCashCardWithOwner.getId());
         URI locationOfNewCashCard = ucb
                 .path("cashcards/{id}")
-                .buildAndExpand(cashCardWithOwner.getId())
+                .buildAndExpand(savedCashCardWithOwner.getId())
                 .toUri();
-
-        System.err.println("endpoint reached: "+ locationOfNewCashCard);
         return ResponseEntity.created(locationOfNewCashCard).build();
     }
 
+    /*
+    * Creates all the cards in one transaction, Hibernate sends the INSERTs in JDBC batches.
+    * The body lists the Locations of the new cards, in request order.
+    */
+    @PostMapping("/batch")
+    private ResponseEntity<List<URI>> createCashCards(@RequestBody List<CashCard> newCashCardRequests, UriComponentsBuilder ucb, Principal principal) {
+        if (newCashCardRequests.isEmpty() || newCashCardRequests.size() > maxBatchSize
+                || newCashCardRequests.stream().anyMatch(request -> request == null || !isValidAmount(request.getAmount()))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<CashCard> cashCardsWithOwner = newCashCardRequests.stream()
+                .map(request -> new CashCard(null, request.getAmount(), principal.getName()))
+                .toList();
+        List<CashCard> savedCashCards = cashCardService.createAll(principal.getName(), cashCardsWithOwner);
+
+        UriComponents locationTemplate = ucb.path("cashcards/{id}").build();
+        List<URI> locations = new ArrayList<>(cashCardsWithOwner.size());
+        for (CashCard savedCashCard : savedCashCards) {
+            locations.add(locationTemplate.expand(savedCashCard.getId()).toUri());
+            cashCardChangeFeed.publish(principal.getName(), ChangeType.CREATED, savedCashCard.getId());
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(locations);
+    }
+
     @PutMapping("/{id}")
     private ResponseEntity<Void> putCashCard(@PathVariable Long id, @RequestBody CashCard cashCardUpdate, Principal principal){
-        CashCard cashCard = cashCardRepository.findByIdAndOwner(id,principal.getName());
-        if(cashCard == null) return ResponseEntity.notFound().build();
+        if (!isValidAmount(cashCardUpdate.getAmount())) return ResponseEntity.badRequest().build();
 
-        CashCard updatedCashcard = new CashCard(cashCard.getId(), cashCardUpdate.getAmount(),principal.getName());
-        cashCardRepository.save(updatedCashcard);
+        boolean updated = cashCardService.updateAmount(id, principal.getName(), cashCardUpdate.getAmount());
+        if (!updated) return ResponseEntity.notFound().build();
+
+        cashCardCache.invalidate(principal.getName(), id);
+        cashCardChangeFeed.publish(principal.getName(), ChangeType.UPDATED, id);
         return ResponseEntity.noContent().build();
     }
 
     @DeleteMapping("/{id}")
     private ResponseEntity<Void> deleteCashCard(@PathVariable Long id, Principal principal) {
         //cashCardRepository.deleteById(id);
-        if (cashCardRepository.existsByIdAndOwner(id, principal.getName())) {
-            cashCardRepository.deleteById(id);
-            return ResponseEntity.noContent().build();
+        if (!cashCardService.delete(id, principal.getName())) {
+            return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.notFound().build();
+        cashCardCache.invalidate(principal.getName(), id);
+        cashCardChangeFeed.publish(principal.getName(), ChangeType.DELETED, id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /*
+    * Debit and credit only send the delta, the new balance is computed by the database.
+    * 404 when the principal doesn't own the card, 422 when a debit would overdraw it.
+    */
+    @PostMapping("/{id}/debit")
+    private ResponseEntity<Void> debitCashCard(@PathVariable Long id, @RequestBody BalanceChange debit, Principal principal) {
+        if (!debit.isValid()) return ResponseEntity.badRequest().build();
+
+        BalanceChangeResult result = cashCardService.debit(id, principal.getName(), debit.amount());
+        if (result == BalanceChangeResult.NOT_FOUND) return ResponseEntity.notFound().build();
+        if (result == BalanceChangeResult.INSUFFICIENT_FUNDS) return ResponseEntity.unprocessableEntity().build();
+        cashCardCache.invalidate(principal.getName(), id);
+        cashCardChangeFeed.publish(principal.getName(), ChangeType.UPDATED, id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/{id}/credit")
+    private ResponseEntity<Void> creditCashCard(@PathVariable Long id, @RequestBody BalanceChange credit, Principal principal) {
+        if (!credit.isValid()) return ResponseEntity.badRequest().build();
+
+        if (cashCardService.credit(id, principal.getName(), credit.amount()) == BalanceChangeResult.NOT_FOUND) {
+            return ResponseEntity.notFound().build();
+        }
+        cashCardCache.invalidate(principal.getName(), id);
+        cashCardChangeFeed.publish(principal.getName(), ChangeType.UPDATED, id);
+        return ResponseEntity.noContent().build();
     }
 
 }
@@ -0,0 +1,41 @@
+package backend.cashcard.controller;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardFields;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token of GET /cashcards?cursor=...
+ * It encodes the (amount, id) of the last card of a page, clients must not rely on its format.
+ */
+record CashCardCursor(Double amount, Long id) {
+
+    static CashCardCursor of(CashCard lastCashCard) {
+        return new CashCardCursor(lastCashCard.getAmount(), lastCashCard.getId());
+    }
+
+    static CashCardCursor of(CashCardFields lastCashCard) {
+        return new CashCardCursor(lastCashCard.amount(), lastCashCard.id());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by encode()
+     */
+    static CashCardCursor decode(String token) {
+        String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int separator = decoded.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor: " + token);
+        }
+        return new CashCardCursor(
+                Double.valueOf(decoded.substring(0, separator)),
+                Long.valueOf(decoded.substring(separator + 1)));
+    }
+
+    String encode() {
+        String raw = amount + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
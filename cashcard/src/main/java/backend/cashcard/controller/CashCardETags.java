@@ -0,0 +1,78 @@
+package backend.cashcard.controller;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardFields;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/*
+* ETags derived from the version column, computed without serializing anything:
+* - a card: W/"<id>-<version>"
+* - a list page: a hash of the (id, version) pairs of its cards, in order, and of whether a next page follows.
+*   It changes when a card of the page changes, when a card enters, leaves or moves within the page, and when
+*   a full last page gets a next one (the X-Next-Cursor of a keyset page is derived from its last card,
+*   so that flag is all the hash needs to cover it).
+* Both are weak: the same card or page goes out as JSON, Smile or CBOR, gzipped or not, and Tomcat doesn't
+* compress a response with a strong ETag. The responses say Vary: Accept (see BinaryFormatsConfig).
+*/
+final class CashCardETags {
+
+    private CashCardETags() {
+    }
+
+    static String of(CashCard cashCard) {
+        return of(cashCard.getId(), cashCard.getVersion());
+    }
+
+    static String of(Long id, Long version) {
+        return "W/\"" + id + "-" + version + "\"";
+    }
+
+    static String ofPage(List<CashCard> cashCards, boolean hasNext) {
+        return ofPage(cashCards, hasNext, CashCard::getId, CashCard::getVersion);
+    }
+
+    static String ofFieldsPage(List<CashCardFields> cashCards, boolean hasNext) {
+        return ofPage(cashCards, hasNext, CashCardFields::id, CashCardFields::version);
+    }
+
+    private static <T> String ofPage(List<T> cashCards, boolean hasNext, Function<T, Long> id, Function<T, Long> version) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        ByteBuffer pair = ByteBuffer.allocate(2 * Long.BYTES);
+        for (T cashCard : cashCards) {
+            pair.clear();
+            pair.putLong(id.apply(cashCard)).putLong(version.apply(cashCard));
+            digest.update(pair.array());
+        }
+        digest.update((byte) (hasNext ? 1 : 0));
+        byte[] hash = digest.digest();
+        return "W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22) + "\"";
+    }
+
+    /*
+    * If-None-Match is a list of ETags or *, a weak ETag matches on its opaque part (RFC 9110 weak comparison).
+    */
+    static boolean matches(String ifNoneMatch, String eTag) {
+        String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
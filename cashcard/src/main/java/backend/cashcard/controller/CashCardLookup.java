@@ -0,0 +1,12 @@
+package backend.cashcard.controller;
+
+import backend.cashcard.entity.CashCard;
+
+import java.util.List;
+
+/*
+* Result of a multi-get: the cards found, in the order their ids were requested (duplicates once),
+* and the ids the principal has no card for.
+*/
+record CashCardLookup(List<CashCard> cashCards, List<Long> missing) {
+}
@@ -0,0 +1,42 @@
+package backend.cashcard.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+
+/**
+ * Buffers the bounded responses of /cashcards/** (cards, pages, multi-gets, summaries) so that they go out
+ * with a Content-Length. The message converters flush the body as they write it, and Tomcat only applies
+ * server.compression.min-response-size to a response whose length it knows: without the buffer, a single
+ * card of 50 bytes would be gzipped too.
+ *
+ * The export and the change feed are unbounded streams and are left alone, as is anything asynchronous.
+ */
+class ContentLengthFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getServletPath();
+        return !path.startsWith("/cashcards")
+                || path.startsWith("/cashcards/export")
+                || path.startsWith("/cashcards/changes");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper buffered = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, buffered);
+        } finally {
+            if (!request.isAsyncStarted()) {
+                buffered.copyBodyToResponse();
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package backend.cashcard.dataset;
+
+import backend.cashcard.datasource.CashCardShards;
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.security.CredentialCache;
+import backend.cashcard.security.CredentialCacheEvictingUserDetailsManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Bulk-loads a synthetic dataset at startup when cashcard.dataset.cards is set (see application-load-test.properties),
+ * to reproduce production-sized owners locally.
+ *
+ * Owners are named &lt;prefix&gt;&lt;rank&gt; and hold cards following a Zipf distribution of the given skew: with
+ * 2,000,000 cards, 10,000 owners and a skew of 1, owner 0 holds about 200,000 cards, owner 10 about 18,000,
+ * owner 100 about 2,000 and the tail about 20 each. Amounts are log-normal, two decimals, reproducible from the seed.
+ *
+ * Each shard gets the owners that hash to it, in one pass of batched INSERTs: every owner gets a contiguous range of
+ * ids reserved from the CASH_CARD_SEQ of its shard (the sequence restarts after it), and its summary row.
+ * Every owner is also registered as a user with the same password (one BCrypt hash), role CARD-OWNER.
+ * With cashcard.dataset.warm-credentials their verifications are put in the CredentialCache right away: the first
+ * request of each of the thousands of owners would otherwise cost a BCrypt verification, about 100ms of CPU, and
+ * a load test would mostly measure those until every owner has been seen once.
+ * The owners, their first id and their number of cards are written to the manifest, a CSV file read by
+ * the MixedLoadDriver of src/jmh/java.
+ *
+ * Runs before the application reports itself ready, so before ShardRebalancer and the ledger recovery.
+ * When the first owner already has a summary (a persistent database loaded by a previous run) only the users
+ * are registered, the previous manifest still applies.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.dataset.cards")
+public class DatasetGenerator implements ApplicationRunner {
+
+    /**
+     * An owner of the dataset and its cards, ids firstId to firstId + cards - 1.
+     */
+    public record Owner(String name, long firstId, int cards) {
+    }
+
+    private static final String INSERT_CASH_CARD = "INSERT INTO CASH_CARD(ID, AMOUNT, OWNER, VERSION) VALUES (?, ?, ?, 0)";
+
+    private static final String INSERT_SUMMARY =
+            "INSERT INTO CASH_CARD_SUMMARY (OWNER, CARD_COUNT, TOTAL_AMOUNT, MIN_AMOUNT, MAX_AMOUNT) VALUES (?, ?, ?, ?, ?)";
+
+    private final long cards;
+
+    private final int owners;
+
+    private final double skew;
+
+    private final long seed;
+
+    private final String ownerPrefix;
+
+    private final String password;
+
+    private final Path manifest;
+
+    private final boolean warmCredentials;
+
+    private final int batchSize;
+
+    private final CashCardShards cashCardShards;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final CredentialCacheEvictingUserDetailsManager users;
+
+    private final CredentialCache credentialCache;
+
+    private final PasswordEncoder passwordEncoder;
+
+    public DatasetGenerator(@Value("${cashcard.dataset.cards}") long cards,
+                            @Value("${cashcard.dataset.owners:10000}") int owners,
+                            @Value("${cashcard.dataset.skew:1.0}") double skew,
+                            @Value("${cashcard.dataset.seed:42}") long seed,
+                            @Value("${cashcard.dataset.owner-prefix:owner-}") String ownerPrefix,
+                            @Value("${cashcard.dataset.password:load-test}") String password,
+                            @Value("${cashcard.dataset.manifest:dataset/manifest.csv}") Path manifest,
+                            @Value("${cashcard.dataset.warm-credentials:true}") boolean warmCredentials,
+                            @Value("${cashcard.dataset.batch-size:1000}") int batchSize,
+                            CashCardShards cashCardShards,
+                            DataSource dataSource,
+                            EntityManagerFactory entityManagerFactory,
+                            CredentialCacheEvictingUserDetailsManager users,
+                            CredentialCache credentialCache,
+                            PasswordEncoder passwordEncoder) {
+        this.cards = cards;
+        this.owners = owners;
+        this.skew = skew;
+        this.seed = seed;
+        this.ownerPrefix = ownerPrefix;
+        this.password = password;
+        this.manifest = manifest;
+        this.warmCredentials = warmCredentials;
+        this.batchSize = batchSize;
+        this.cashCardShards = cashCardShards;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.entityManagerFactory = entityManagerFactory;
+        this.users = users;
+        this.credentialCache = credentialCache;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String encodedPassword = passwordEncoder.encode(password);
+        for (int rank = 0; rank < owners; rank++) {
+            String owner = ownerName(rank);
+            users.createUser(User.withUsername(owner).password(encodedPassword).roles("CARD-OWNER").build());
+            if (warmCredentials) {
+                // what CachingAuthenticationProvider keeps of a successful verification, the credentials erased
+                User principal = (User) User.withUsername(owner).password(encodedPassword).roles("CARD-OWNER").build();
+                principal.eraseCredentials();
+                credentialCache.put(credentialCache.digest(owner, password),
+                        new CredentialCache.VerifiedUser(owner, principal, principal.getAuthorities()));
+            }
+        }
+
+        String firstOwner = ownerName(0);
+        Integer loaded = cashCardShards.callOn(cashCardShards.shardOf(firstOwner), () -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM CASH_CARD_SUMMARY WHERE OWNER = ?", Integer.class, firstOwner));
+        if (loaded != null && loaded > 0) {
+            return;
+        }
+
+        int[] counts = counts(cards, owners, skew);
+        List<List<Integer>> ranksByShard = new ArrayList<>();
+        for (int shard = 0; shard < cashCardShards.count(); shard++) {
+            ranksByShard.add(new ArrayList<>());
+        }
+        for (int rank = 0; rank < owners; rank++) {
+            ranksByShard.get(cashCardShards.shardOf(ownerName(rank))).add(rank);
+        }
+
+        List<Owner> dataset = new ArrayList<>(owners);
+        cashCardShards.scatter(shard -> load(ranksByShard.get(shard), counts)).forEach(dataset::addAll);
+        dataset.sort(Comparator.comparingInt((Owner owner) -> owner.cards()).reversed());
+        writeManifest(dataset);
+    }
+
+    /**
+     * Cards of each owner rank, proportional to 1 / (rank + 1)^skew. The rounding remainder goes to the first
+     * owners, one card each.
+     */
+    static int[] counts(long cards, int owners, double skew) {
+        double[] weights = new double[owners];
+        double total = 0;
+        for (int rank = 0; rank < owners; rank++) {
+            weights[rank] = 1 / Math.pow(rank + 1, skew);
+            total += weights[rank];
+        }
+        int[] counts = new int[owners];
+        long assigned = 0;
+        for (int rank = 0; rank < owners; rank++) {
+            counts[rank] = (int) (cards * weights[rank] / total);
+            assigned += counts[rank];
+        }
+        for (int rank = 0; assigned < cards; rank++) {
+            counts[rank]++;
+            assigned++;
+        }
+        return counts;
+    }
+
+    /*
+    * Runs on the shard of the owners. The ids are reserved first: the sequence restarts one allocation past
+    * the last of them, so the ids Hibernate hands out next, from the block of the next sequence value, are above.
+    */
+    private List<Owner> load(List<Integer> ranks, int[] counts) {
+        long cardsOfShard = 0;
+        for (int rank : ranks) {
+            cardsOfShard += counts[rank];
+        }
+        Long firstId = jdbcTemplate.queryForObject(
+                dialect().getSequenceSupport().getSequenceNextValString(CashCard.ID_SEQUENCE), Long.class);
+        jdbcTemplate.execute("ALTER SEQUENCE " + CashCard.ID_SEQUENCE + " RESTART WITH "
+                + (firstId + cardsOfShard + CashCard.ID_ALLOCATION_SIZE));
+
+        List<Owner> loaded = new ArrayList<>(ranks.size());
+        List<Object[]> rows = new ArrayList<>(batchSize);
+        List<Object[]> summaries = new ArrayList<>(ranks.size());
+        long nextId = firstId;
+        for (int rank : ranks) {
+            String owner = ownerName(rank);
+            SplittableRandom random = new SplittableRandom(seed + rank);
+            double total = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < counts[rank]; i++) {
+                double amount = amount(random);
+                rows.add(new Object[] {nextId + i, amount, owner});
+                if (rows.size() == batchSize) {
+                    jdbcTemplate.batchUpdate(INSERT_CASH_CARD, rows);
+                    rows.clear();
+                }
+                total += amount;
+                min = Math.min(min, amount);
+                max = Math.max(max, amount);
+            }
+            boolean hasCards = counts[rank] > 0;
+            summaries.add(new Object[] {owner, counts[rank], total, hasCards ? min : null, hasCards ? max : null});
+            loaded.add(new Owner(owner, nextId, counts[rank]));
+            nextId += counts[rank];
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CASH_CARD, rows);
+        }
+        for (int from = 0; from < summaries.size(); from += batchSize) {
+            jdbcTemplate.batchUpdate(INSERT_SUMMARY, summaries.subList(from, Math.min(from + batchSize, summaries.size())));
+        }
+        return loaded;
+    }
+
+    // median 33.12, 1% of the cards above 340
+    private static double amount(SplittableRandom random) {
+        return Math.round(Math.exp(3.5 + random.nextGaussian()) * 100) / 100.0;
+    }
+
+    private String ownerName(int rank) {
+        return ownerPrefix + rank;
+    }
+
+    private Dialect dialect() {
+        return entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+    }
+
+    private void writeManifest(List<Owner> dataset) {
+        try {
+            Path parent = manifest.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            try (BufferedWriter writer = Files.newBufferedWriter(manifest)) {
+                writer.write("owner,firstId,cards");
+                writer.newLine();
+                for (Owner owner : dataset) {
+                    writer.write(owner.name() + "," + owner.firstId() + "," + owner.cards());
+                    writer.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
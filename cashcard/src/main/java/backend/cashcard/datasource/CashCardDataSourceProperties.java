@@ -0,0 +1,65 @@
+package backend.cashcard.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * cashcard.datasource.*: the databases behind the primary DataSource, see DataSourceConfig.
+ *
+ * Unsharded (no shards listed): a single shard, spring.datasource.url, read through cashcard.datasource.replicas.
+ * Sharded: cashcard.datasource.shards[i].url and cashcard.datasource.shards[i].replicas, the index is the shard number.
+ * Every database uses the credentials of spring.datasource and the pool settings of spring.datasource.hikari.
+ */
+public class CashCardDataSourceProperties {
+
+    private List<String> replicas = new ArrayList<>();
+
+    private List<Shard> shards = new ArrayList<>();
+
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<String> replicas) {
+        this.replicas = replicas;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+
+    public static class Shard {
+
+        private String url;
+
+        private List<String> replicas = new ArrayList<>();
+
+        public Shard() {
+        }
+
+        public Shard(String url, List<String> replicas) {
+            this.url = url;
+            this.replicas = replicas;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public List<String> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<String> replicas) {
+            this.replicas = replicas;
+        }
+    }
+}
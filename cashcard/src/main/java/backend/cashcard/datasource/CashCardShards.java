@@ -0,0 +1,108 @@
+package backend.cashcard.datasource;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Which shard the statements of the current thread go to (see ShardRoutingDataSource).
+ *
+ * Owner-scoped work needs nothing special: every query of CashCardRepository is scoped by the authenticated
+ * principal, so the shard is derived from it. Work without a principal (startup, schema, scripts, admin jobs)
+ * goes to shard 0 unless it runs inside callOn/runOn, and work spanning all the shards uses scatter.
+ *
+ * A transaction stays on the shard of its first statement, transactions across shards are not supported.
+ */
+public class CashCardShards {
+
+    private static final ThreadLocal<Integer> BOUND = new ThreadLocal<>();
+
+    private final int count;
+
+    private final ShardResolver resolver;
+
+    private final Executor executor;
+
+    public CashCardShards(int count, ShardResolver resolver, Executor executor) {
+        this.count = count;
+        this.resolver = resolver;
+        this.executor = executor;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int shardOf(String owner) {
+        return count == 1 ? 0 : resolver.shardOf(owner, count);
+    }
+
+    /**
+     * The shard bound by callOn/runOn, else the shard of the authenticated principal, else shard 0.
+     */
+    public int current() {
+        Integer bound = BOUND.get();
+        if (bound != null) {
+            return bound;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
+            return 0;
+        }
+        return shardOf(authentication.getName());
+    }
+
+    public <T> T callOn(int shard, Supplier<T> task) {
+        Integer previous = BOUND.get();
+        BOUND.set(shard);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                BOUND.remove();
+            } else {
+                BOUND.set(previous);
+            }
+        }
+    }
+
+    public void runOn(int shard, Runnable task) {
+        callOn(shard, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the task on every shard in parallel, on the applicationTaskExecutor, and gathers the results
+     * in shard order. The first failure is rethrown once all the shards are done.
+     */
+    public <T> List<T> scatter(IntFunction<T> task) {
+        if (count == 1) {
+            return Collections.singletonList(callOn(0, () -> task.apply(0)));
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> callOn(target, () -> task.apply(target)), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+}
@@ -0,0 +1,130 @@
+package backend.cashcard.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Sharding and read/write splitting (see CashCardDataSourceProperties for the configuration).
+ *
+ * The DataSource used by JPA is a LazyConnectionDataSourceProxy: the physical connection is only fetched at
+ * the first statement, once the transaction manager has flagged the connection read-only or not.
+ * Read-write connections come from the primary of the current shard, read-only ones from its replicas
+ * (or from its primary while ReadYourWrites applies). Read-only transactions are declared on the repositories
+ * and services (CashCardRepository is @Transactional(readOnly = true) by default).
+ *
+ * Pools are named "primary" and "replica-<n>", prefixed with "shard-<i>-" when there are several shards.
+ */
+@Configuration
+class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("cashcard.datasource")
+    CashCardDataSourceProperties cashCardDataSourceProperties() {
+        return new CashCardDataSourceProperties();
+    }
+
+    /**
+     * Settings every pool starts from: spring.datasource credentials and spring.datasource.hikari.
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariConfig hikariConfig(DataSourceProperties properties) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(properties.determineUrl());
+        config.setDriverClassName(properties.determineDriverClassName());
+        config.setUsername(properties.determineUsername());
+        config.setPassword(properties.determinePassword());
+        return config;
+    }
+
+    @Bean
+    ShardResolver shardResolver() {
+        return new JumpConsistentHash();
+    }
+
+    @Bean
+    CashCardShards cashCardShards(CashCardDataSourceProperties properties, ShardResolver shardResolver,
+                                  @Qualifier("applicationTaskExecutor") Executor executor) {
+        return new CashCardShards(Math.max(1, properties.getShards().size()), shardResolver, executor);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(CashCardDataSourceProperties properties,
+                          HikariConfig hikariConfig,
+                          CashCardShards cashCardShards,
+                          ReadYourWrites readYourWrites,
+                          ObjectProvider<MeterRegistry> meterRegistry) {
+        List<CashCardDataSourceProperties.Shard> shards = properties.getShards().isEmpty()
+                ? List.of(new CashCardDataSourceProperties.Shard(hikariConfig.getJdbcUrl(), properties.getReplicas()))
+                : properties.getShards();
+
+        List<HikariDataSource> primaries = new ArrayList<>();
+        List<ReplicaRoutingDataSource> readers = new ArrayList<>();
+        boolean replicated = false;
+        for (int i = 0; i < shards.size(); i++) {
+            String prefix = shards.size() == 1 ? "" : "shard-" + i + "-";
+            HikariDataSource primary = pool(hikariConfig, shards.get(i).getUrl(), prefix + "primary", false, meterRegistry);
+            List<HikariDataSource> replicas = new ArrayList<>();
+            for (String url : shards.get(i).getReplicas()) {
+                replicas.add(pool(hikariConfig, url, prefix + "replica-" + replicas.size(), true, meterRegistry));
+            }
+            primaries.add(primary);
+            readers.add(new ReplicaRoutingDataSource(primary, replicas, readYourWrites));
+            replicated |= !replicas.isEmpty();
+        }
+
+        LazyConnectionDataSourceProxy dataSource = new CashCardDataSource(new ShardRoutingDataSource(primaries, cashCardShards), primaries, readers);
+        if (replicated) {
+            dataSource.setReadOnlyDataSource(new ShardRoutingDataSource(readers, cashCardShards));
+        }
+        return dataSource;
+    }
+
+    private static HikariDataSource pool(HikariConfig template, String url, String name, boolean readOnly,
+                                         ObjectProvider<MeterRegistry> meterRegistry) {
+        HikariDataSource pool = new HikariDataSource();
+        template.copyStateTo(pool);
+        pool.setJdbcUrl(url.trim());
+        pool.setPoolName(name);
+        pool.setReadOnly(readOnly);
+        meterRegistry.ifAvailable(pool::setMetricRegistry);
+        return pool;
+    }
+
+    /*
+    * The pools aren't beans of their own, they are closed with the DataSource.
+    */
+    private static final class CashCardDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+        private final List<HikariDataSource> primaries;
+
+        private final List<ReplicaRoutingDataSource> readers;
+
+        CashCardDataSource(DataSource target, List<HikariDataSource> primaries, List<ReplicaRoutingDataSource> readers) {
+            super(target);
+            this.primaries = primaries;
+            this.readers = readers;
+        }
+
+        @Override
+        public void close() {
+            readers.forEach(ReplicaRoutingDataSource::close);
+            primaries.forEach(HikariDataSource::close);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package backend.cashcard.datasource;
+
+/**
+ * Jump consistent hash (Lamping, Veach) of the owner name: going from N to N + 1 shards only moves
+ * the owners that land on the new shard, about 1 / (N + 1) of them, instead of nearly all of them with hash % N.
+ *
+ * The key is String.hashCode(), which is specified and therefore the same on every JVM,
+ * spread over 64 bits by the MurmurHash3 finalizer.
+ */
+public class JumpConsistentHash implements ShardResolver {
+
+    @Override
+    public int shardOf(String owner, int shardCount) {
+        long key = mix(owner.hashCode());
+        long bucket = -1;
+        long next = 0;
+        while (next < shardCount) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
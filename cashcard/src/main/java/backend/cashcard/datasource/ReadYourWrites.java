@@ -0,0 +1,57 @@
+package backend.cashcard.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+
+import java.time.Duration;
+
+/**
+ * Staleness policy of the replicas: a principal that committed a write transaction reads from the primary
+ * for the configured window (cashcard.datasource.read-your-writes), so it never sees a replica
+ * that hasn't caught up with its own change yet. Other principals keep reading from the replicas.
+ *
+ * Registered on the transaction manager as a TransactionExecutionListener, so every committed
+ * read-write transaction counts, whatever repository or service started it.
+ */
+@Component
+public class ReadYourWrites implements TransactionExecutionListener {
+
+    private final Cache<String, Boolean> recentWriters;
+
+    public ReadYourWrites(@Value("${cashcard.datasource.read-your-writes:5s}") Duration window,
+                          @Value("${cashcard.datasource.read-your-writes-maximum-size:100000}") long maximumSize) {
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+        if (commitFailure == null && !transaction.isReadOnly()) {
+            String principal = currentPrincipal();
+            if (principal != null) {
+                recentWriters.put(principal, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * True when the principal of the current thread wrote within the window.
+     */
+    public boolean isActive() {
+        String principal = currentPrincipal();
+        return principal != null && recentWriters.getIfPresent(principal) != null;
+    }
+
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+    }
+}
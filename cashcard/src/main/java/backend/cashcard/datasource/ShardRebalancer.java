@@ -0,0 +1,146 @@
+package backend.cashcard.datasource;
+
+import backend.cashcard.repository.CashCardSummaryRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves the owners that are not on their shard anymore, after the number of shards (or the ShardResolver) changed,
+ * and the rows inserted without going through an owner-scoped request (data.sql and bulk loads land on shard 0).
+ *
+ * Runs at startup before the application reports itself ready for traffic, and can be called again at any time.
+ * The shards are scanned in parallel. A misplaced owner is moved BATCH_SIZE cards at a time: a transaction on the
+ * source shard locks the next batch, copies the cards missing on the target shard there (same ids and versions)
+ * in a transaction of its own that commits first, then deletes the batch from the source and commits.
+ * Once the source has no card of the owner left, its summary is rebuilt on the target and dropped from the source.
+ * Each step is idempotent, an interrupted run is completed by the next one. A copy that fails rolls the source back,
+ * so a card is only ever on both shards for the moment between the two commits: a card the owner deleted on the
+ * target after an earlier copy is not copied back by the next run, unless that run died right between them.
+ * Requests of a moving owner already go to the target shard: until the move is done they only see part of the cards.
+ */
+@Component
+public class ShardRebalancer {
+
+    public record Result(int owners, int cashCards) {
+    }
+
+    private record CardRow(Long id, Double amount, String owner, Long version) {
+    }
+
+    public static final int BATCH_SIZE = 500;
+
+    private final CashCardShards cashCardShards;
+
+    private final CashCardSummaryRepository cashCardSummaryRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // the copy to the target, committed while the transaction of the source waits
+    private final TransactionTemplate newTransactionTemplate;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ShardRebalancer(CashCardShards cashCardShards,
+                           CashCardSummaryRepository cashCardSummaryRepository,
+                           TransactionTemplate transactionTemplate,
+                           DataSource dataSource) {
+        this.cashCardShards = cashCardShards;
+        this.cashCardSummaryRepository = cashCardSummaryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebalanceAtStartup() {
+        if (cashCardShards.count() > 1) {
+            rebalance();
+        }
+    }
+
+    /**
+     * @return the owners moved and the cards copied to their new shard
+     */
+    public Result rebalance() {
+        return cashCardShards.scatter(this::moveMisplacedOwners).stream()
+                .reduce(new Result(0, 0), (a, b) -> new Result(a.owners() + b.owners(), a.cashCards() + b.cashCards()));
+    }
+
+    private Result moveMisplacedOwners(int source) {
+        List<String> owners = jdbcTemplate.queryForList(
+                "SELECT OWNER FROM CASH_CARD UNION SELECT OWNER FROM CASH_CARD_SUMMARY", String.class);
+        int movedOwners = 0;
+        int movedCards = 0;
+        for (String owner : owners) {
+            int target = cashCardShards.shardOf(owner);
+            if (target != source) {
+                movedCards += move(owner, source, target);
+                movedOwners++;
+            }
+        }
+        return new Result(movedOwners, movedCards);
+    }
+
+    private int move(String owner, int source, int target) {
+        int copied = 0;
+        int[] batch;
+        do {
+            batch = transactionTemplate.execute(status -> moveBatch(owner, target));
+            copied += batch[1];
+        } while (batch[0] == BATCH_SIZE);
+
+        cashCardShards.runOn(target, () -> transactionTemplate.executeWithoutResult(status -> {
+            cashCardSummaryRepository.insertFromCashCards(owner);
+            cashCardSummaryRepository.lockByOwner(owner);
+            cashCardSummaryRepository.rebuild(owner);
+        }));
+        jdbcTemplate.update("DELETE FROM CASH_CARD_SUMMARY WHERE OWNER = ?", owner);
+        return copied;
+    }
+
+    /*
+     * In the transaction of the source shard: the cards of the batch stay locked there until they are on the target.
+     * Returns the cards of the batch and the ones copied.
+     */
+    private int[] moveBatch(String owner, int target) {
+        List<CardRow> cards = jdbcTemplate.query(
+                "SELECT ID, AMOUNT, OWNER, VERSION FROM CASH_CARD WHERE OWNER = ? ORDER BY ID LIMIT ? FOR UPDATE",
+                (rs, i) -> new CardRow(rs.getLong(1), (Double) rs.getObject(2), rs.getString(3), rs.getLong(4)),
+                owner, BATCH_SIZE);
+        if (cards.isEmpty()) {
+            return new int[] {0, 0};
+        }
+
+        int copied = cashCardShards.callOn(target, () -> newTransactionTemplate.execute(status -> {
+            Set<Long> present = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT ID FROM CASH_CARD WHERE OWNER = ? AND ID BETWEEN ? AND ?", Long.class,
+                    owner, cards.get(0).id(), cards.get(cards.size() - 1).id()));
+            List<CardRow> missing = cards.stream().filter(card -> !present.contains(card.id())).toList();
+            jdbcTemplate.batchUpdate("INSERT INTO CASH_CARD (ID, AMOUNT, OWNER, VERSION) VALUES (?, ?, ?, ?)", missing, BATCH_SIZE,
+                    (ps, card) -> {
+                        ps.setLong(1, card.id());
+                        ps.setObject(2, card.amount());
+                        ps.setString(3, card.owner());
+                        ps.setLong(4, card.version());
+                    });
+            return missing.size();
+        }));
+
+        jdbcTemplate.batchUpdate("DELETE FROM CASH_CARD WHERE ID = ?", cards, BATCH_SIZE,
+                (ps, card) -> ps.setLong(1, card.id()));
+        return new int[] {cards.size(), copied};
+    }
+}
@@ -0,0 +1,15 @@
+package backend.cashcard.datasource;
+
+/**
+ * Maps an owner to the shard holding its cards and its summary. Every owner-scoped query runs on that shard.
+ *
+ * The default is JumpConsistentHash, declare another ShardResolver bean (@Primary) to plug in a different scheme,
+ * e.g. a directory lookup. Changing the mapping of existing owners requires a ShardRebalancer run.
+ */
+public interface ShardResolver {
+
+    /**
+     * @return a shard in [0, shardCount)
+     */
+    int shardOf(String owner, int shardCount);
+}
@@ -0,0 +1,33 @@
+package backend.cashcard.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Connections from the data source of the current shard (see CashCardShards.current()).
+ */
+public class ShardRoutingDataSource extends AbstractDataSource {
+
+    private final List<? extends DataSource> shards;
+
+    private final CashCardShards cashCardShards;
+
+    public ShardRoutingDataSource(List<? extends DataSource> shards, CashCardShards cashCardShards) {
+        this.shards = shards;
+        this.cashCardShards = cashCardShards;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return shards.get(cashCardShards.current()).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return shards.get(cashCardShards.current()).getConnection(username, password);
+    }
+}
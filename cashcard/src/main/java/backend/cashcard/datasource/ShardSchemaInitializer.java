@@ -0,0 +1,83 @@
+package backend.cashcard.datasource;
+
+import backend.cashcard.entity.CashCard;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.jpa.boot.spi.JpaSettings;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hibernate manages the schema (spring.jpa.hibernate.ddl-auto) through the connection it gets at startup,
+ * i.e. on shard 0 only. Once the SessionFactory is built this applies the same schema action to the other shards.
+ *
+ * It also gives every shard its own id range: CASH_CARD_SEQ of shard i is restarted at i * ID_RANGE,
+ * unless it is already past that point. Ids are then unique across shards whichever sequence
+ * they were drawn from, and a card keeps its id when the ShardRebalancer moves it.
+ * 2^40 ids per shard keep every id below 2^53, exact as a JSON number, for up to 8192 shards.
+ */
+@Component
+class ShardSchemaInitializer implements HibernatePropertiesCustomizer, Integrator {
+
+    static final long ID_RANGE = 1L << 40;
+
+    private final CashCardShards cashCardShards;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    ShardSchemaInitializer(CashCardShards cashCardShards, DataSource dataSource) {
+        this.cashCardShards = cashCardShards;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(JpaSettings.INTEGRATOR_PROVIDER, (IntegratorProvider) () -> List.of(this));
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        sessionFactory.addObserver(new SessionFactoryObserver() {
+            @Override
+            public void sessionFactoryCreated(SessionFactory factory) {
+                initialize(metadata, sessionFactory);
+            }
+        });
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    private void initialize(Metadata metadata, SessionFactoryImplementor sessionFactory) {
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        for (int shard = 1; shard < cashCardShards.count(); shard++) {
+            long rangeStart = shard * ID_RANGE;
+            cashCardShards.runOn(shard, () -> {
+                // with create-drop, only the schema of shard 0 is dropped at shutdown
+                SchemaManagementToolCoordinator.process(metadata, sessionFactory.getServiceRegistry(),
+                        sessionFactory.getProperties(), action -> {
+                        });
+
+                String nextValue = dialect.getSequenceSupport().getSequenceNextValString(CashCard.ID_SEQUENCE);
+                Long next = jdbcTemplate.queryForObject(nextValue, Long.class);
+                if (next != null && next < rangeStart) {
+                    jdbcTemplate.execute("ALTER SEQUENCE " + CashCard.ID_SEQUENCE + " RESTART WITH " + rangeStart);
+                }
+            });
+        }
+    }
+}
@@ -1,14 +1,60 @@
 package backend.cashcard.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.ColumnDefault;
 
+/*
+* Every query is scoped by owner:
+* (owner, amount, id) serves the listings sorted by amount, the amount range filters and the keyset pages,
+* (owner, id) serves the single card lookups and mutations.
+*/
 @Entity
+@Table(indexes = {
+        @Index(name = "IDX_CASH_CARD_OWNER_AMOUNT_ID", columnList = "owner, amount, id"),
+        @Index(name = "IDX_CASH_CARD_OWNER_ID", columnList = "owner, id")
+})
 public class CashCard {
-    @Id Long id;
+
+    public static final String ID_SEQUENCE = "CASH_CARD_SEQ";
+
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /*
+    * Ids come from a sequence with a pooled optimizer: one sequence call hands out 50 ids,
+    * which lets Hibernate batch the INSERTs (an IDENTITY column would need one round trip per row).
+    * The sequence starts above the ids seeded by data.sql.
+    * With several shards each one has its own sequence, restarted at the beginning of the id range of the shard
+    * (see ShardSchemaInitializer), so ids stay unique across shards.
+    */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cash_card_seq")
+    @SequenceGenerator(name = "cash_card_seq", sequenceName = CashCard.ID_SEQUENCE, initialValue = 1000, allocationSize = CashCard.ID_ALLOCATION_SIZE)
+    Long id;
+
+    // compared by the keyset cursors and the range filters, the API rejects cards without one
+    @Column(nullable = false)
     Double amount;
     String owner;
 
+    /*
+    * Bumped on every change of the card, the ETags of the API are derived from it.
+    * The bulk updates of CashCardRepository increment it themselves.
+    * The column default covers rows inserted with plain SQL (data.sql, the benchmarks).
+    */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    Long version;
+
     public CashCard(Long id, Double amount) {
         this.id = id;
         this.amount = amount;
@@ -20,6 +66,14 @@ public class CashCard {
         this.owner = owner;
     }
 
+    /*
+    * A card that isn't loaded from its row, e.g. served from the ledger (see CashCardLedger).
+    */
+    public CashCard(Long id, Double amount, String owner, Long version) {
+        this(id, amount, owner);
+        this.version = version;
+    }
+
     public String getOwner() {
         return owner;
     }
@@ -35,6 +89,12 @@ public class CashCard {
         return id;
     }
 
+    // not part of the JSON body, it is sent as the ETag header
+    @JsonIgnore
+    public Long getVersion() {
+        return version;
+    }
+
     @Override
     public String toString() {
         return "CashCard{" +
@@ -0,0 +1,61 @@
+package backend.cashcard.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/*
+* Running aggregates of the cards of one owner, kept up to date by CashCardService in the same
+* transaction as every card change, so GET /cashcards/summary is a primary key lookup.
+* minAmount and maxAmount are null when the owner has no card.
+*/
+@Entity
+public class CashCardSummary {
+    @Id
+    String owner;
+    long cardCount;
+    double totalAmount;
+    Double minAmount;
+    Double maxAmount;
+
+    public CashCardSummary() {
+    }
+
+    public CashCardSummary(String owner, long cardCount, double totalAmount, Double minAmount, Double maxAmount) {
+        this.owner = owner;
+        this.cardCount = cardCount;
+        this.totalAmount = totalAmount;
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public long getCardCount() {
+        return cardCount;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public Double getMinAmount() {
+        return minAmount;
+    }
+
+    public Double getMaxAmount() {
+        return maxAmount;
+    }
+
+    @Override
+    public String toString() {
+        return "CashCardSummary{" +
+                "owner='" + owner + '\'' +
+                ", cardCount=" + cardCount +
+                ", totalAmount=" + totalAmount +
+                ", minAmount=" + minAmount +
+                ", maxAmount=" + maxAmount +
+                '}';
+    }
+}
@@ -0,0 +1,317 @@
+package backend.cashcard.feed;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.util.DisconnectedClientHelper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-owner fan-out of card changes to Server-Sent Events subscribers (GET /cashcards/changes).
+ *
+ * An idle subscriber is an async request (no thread) plus a small bounded queue. Publishing never does I/O:
+ * it only appends to the history of the owner and offers the change to the queue of each subscriber.
+ * The queues are drained by a pool of sender threads of its own, one drain at a time per subscriber: a send
+ * blocks while the socket buffer of a slow client is full, and on the applicationTaskExecutor such clients would
+ * hold up the exports and shard scatters that share it. At most one drain per subscriber is ever queued.
+ * When a queue is full its content is dropped and the subscriber gets a "resync" event instead,
+ * telling the client to reload the cards rather than apply changes one by one.
+ *
+ * Event ids are "epoch-sequence", where epoch identifies this process. A client reconnecting with
+ * Last-Event-ID gets the changes it missed replayed from the history of the owner, or a "resync" event
+ * when they aren't all there anymore (history overflowed, owner history expired, server restarted).
+ * The history of an owner is kept while it has subscribers and for the retention period after the last one left.
+ */
+@Component
+public class CashCardChangeFeed implements MeterBinder, DisposableBean {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED;
+
+        String eventName() {
+            return name().toLowerCase();
+        }
+    }
+
+    // a subscriber that went away is logged at DEBUG, anything else at WARN
+    private static final DisconnectedClientHelper DISCONNECTED_CLIENT = new DisconnectedClientHelper(CashCardChangeFeed.class.getName());
+
+    static final String RESYNC_EVENT = "resync";
+
+    private static final Object HEARTBEAT = new Object();
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong resyncs = new AtomicLong();
+
+    private final ExecutorService senders;
+
+    private final ScheduledExecutorService heartbeats;
+
+    private final int historySize;
+
+    private final int bufferSize;
+
+    private final Duration timeout;
+
+    private final Duration retention;
+
+    public CashCardChangeFeed(@Value("${cashcard.changes.senders:4}") int senders,
+                              @Value("${cashcard.changes.history-size:256}") int historySize,
+                              @Value("${cashcard.changes.buffer-size:64}") int bufferSize,
+                              @Value("${cashcard.changes.timeout:30m}") Duration timeout,
+                              @Value("${cashcard.changes.heartbeat:20s}") Duration heartbeat,
+                              @Value("${cashcard.changes.retention:5m}") Duration retention) {
+        AtomicInteger senderCount = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "cashcard-changes-sender-" + senderCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.historySize = historySize;
+        this.bufferSize = bufferSize;
+        this.timeout = timeout;
+        this.retention = retention;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cashcard-changes-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeats.scheduleWithFixedDelay(this::tick, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the stream of the owner, replaying the changes after lastEventId when it is given.
+     */
+    public SseEmitter subscribe(String owner, String lastEventId) {
+        Subscriber subscriber = new Subscriber(owner, new SseEmitter(timeout.toMillis()), bufferSize);
+        subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+        // ends the stream (the client reconnects) instead of answering a committed response with a 503
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscriber.emitter.onError(e -> unsubscribe(subscriber));
+
+        // commits the response headers right away, so the client knows it is subscribed
+        subscriber.offer(HEARTBEAT);
+        topics.compute(owner, (key, topic) -> {
+            if (topic == null) {
+                topic = new Topic(sequence.get());
+            }
+            topic.subscribers.add(subscriber);
+            if (lastEventId != null) {
+                topic.replay(parseSequence(lastEventId), subscriber);
+            }
+            return topic;
+        });
+        subscribers.add(subscriber);
+        subscriber.schedule();
+        return subscriber.emitter;
+    }
+
+    /**
+     * Records a committed change of a card of the owner and hands it to the subscribers of that owner.
+     * A no-op for owners nobody listens to, or listened to within the retention period.
+     */
+    public void publish(String owner, ChangeType type, Long cardId) {
+        List<Subscriber> notified = new ArrayList<>();
+        topics.computeIfPresent(owner, (key, topic) -> {
+            Change change = new Change(sequence.incrementAndGet(), type, cardId);
+            topic.record(change, historySize);
+            for (Subscriber subscriber : topic.subscribers) {
+                subscriber.offer(change);
+                notified.add(subscriber);
+            }
+            return topic;
+        });
+        notified.forEach(Subscriber::schedule);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            topics.computeIfPresent(subscriber.owner, (key, topic) -> {
+                topic.subscribers.remove(subscriber);
+                if (topic.subscribers.isEmpty()) {
+                    topic.idleSince = System.nanoTime();
+                }
+                return topic;
+            });
+        }
+    }
+
+    private long parseSequence(String lastEventId) {
+        int dash = lastEventId.indexOf('-');
+        if (dash < 0 || !lastEventId.substring(0, dash).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /*
+    * Heartbeats let the container notice dead connections and keep proxies from closing idle ones,
+    * the same tick drops the history of owners that have been without subscribers for the retention period.
+    */
+    private void tick() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(HEARTBEAT);
+            subscriber.schedule();
+        }
+        long expired = System.nanoTime() - retention.toNanos();
+        for (String owner : topics.keySet()) {
+            topics.computeIfPresent(owner, (key, topic) ->
+                    topic.subscribers.isEmpty() && topic.idleSince - expired < 0 ? null : topic);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cashcard.changes.subscribers", subscribers, Set::size)
+                .description("Open GET /cashcards/changes streams")
+                .register(registry);
+        Gauge.builder("cashcard.changes.owners", topics, Map::size)
+                .description("Owners with a change history kept in memory")
+                .register(registry);
+        FunctionCounter.builder("cashcard.changes.resyncs", resyncs, AtomicLong::get)
+                .description("Resync events sent because a subscriber fell behind or resumed too late")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        // the open streams are ended by the shutdown of the web server
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    private record Change(long sequence, ChangeType type, Long cardId) {
+    }
+
+    /*
+    * Mutated only inside topics.compute*, i.e. under the lock of its ConcurrentHashMap bin.
+    * Everything done there is in memory, nothing blocks.
+    */
+    private final class Topic {
+        final List<Subscriber> subscribers = new ArrayList<>();
+        final ArrayDeque<Change> history = new ArrayDeque<>();
+        // every change after this sequence is still in the history
+        long floor;
+        long idleSince = System.nanoTime();
+
+        Topic(long floor) {
+            this.floor = floor;
+        }
+
+        void record(Change change, int historySize) {
+            if (history.size() == historySize) {
+                floor = history.removeFirst().sequence();
+            }
+            history.addLast(change);
+        }
+
+        void replay(long lastSequence, Subscriber subscriber) {
+            if (lastSequence < floor) {
+                subscriber.resync(sequence.get());
+                return;
+            }
+            for (Change change : history) {
+                if (change.sequence() > lastSequence) {
+                    subscriber.offer(change);
+                }
+            }
+        }
+    }
+
+    private final class Subscriber {
+        final String owner;
+        final SseEmitter emitter;
+        final ArrayBlockingQueue<Object> queue;
+        final AtomicBoolean draining = new AtomicBoolean();
+        // sequence the client is resynced to, 0 when no resync is pending
+        final AtomicLong resyncAt = new AtomicLong();
+
+        Subscriber(String owner, SseEmitter emitter, int bufferSize) {
+            this.owner = owner;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void offer(Object item) {
+            if (!queue.offer(item) && item instanceof Change change) {
+                queue.clear();
+                resync(change.sequence());
+            }
+        }
+
+        void resync(long atSequence) {
+            resyncAt.accumulateAndGet(Math.max(atSequence, 1), Math::max);
+        }
+
+        void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                long resync = resyncAt.getAndSet(0);
+                if (resync > 0) {
+                    resyncs.incrementAndGet();
+                    emitter.send(SseEmitter.event().id(epoch + "-" + resync).name(RESYNC_EVENT).data(""));
+                }
+                Object item;
+                while ((item = queue.poll()) != null) {
+                    if (item instanceof Change change) {
+                        emitter.send(SseEmitter.event()
+                                .id(epoch + "-" + change.sequence())
+                                .name(change.type().eventName())
+                                .data(Map.of("id", change.cardId()), MediaType.APPLICATION_JSON));
+                    } else {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // the client is gone, the emitter callbacks unsubscribe it
+                DISCONNECTED_CLIENT.checkAndLogClientDisconnectedException(e);
+                queue.clear();
+                unsubscribe(this);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!queue.isEmpty() || resyncAt.get() > 0) {
+                schedule();
+            }
+        }
+    }
+}
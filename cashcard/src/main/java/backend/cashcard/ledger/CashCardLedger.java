@@ -0,0 +1,330 @@
+package backend.cashcard.ledger;
+
+import backend.cashcard.datasource.CashCardShards;
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.service.CashCardService.BalanceChangeResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Balance engine used instead of row updates when cashcard.ledger.enabled is true.
+ *
+ * Balance mutations (PUT, debit, credit) change an in-memory index of every card and append a record to the
+ * LedgerLog, no database round trip, no row lock. The CASH_CARD rows and the summaries are a materialized view
+ * of the index, brought up to date in the background by LedgerMaterializer. GET /cashcards/{id} and multi-gets
+ * read the index; listings, exports and summaries read the view and lag behind by up to the flush interval.
+ * Creates still go to the database first, the index follows them. A delete leaves the index first, so that no
+ * mutation is accepted for a card whose row is on its way out.
+ *
+ * Each mutation bumps the version of its card, and the records carry it: at startup the index is loaded from
+ * the rows, then the latest snapshot and the log records after it are applied to every card whose version they
+ * exceed, in whatever order they are read. Recovery runs when the application is ready, mutations wait for it.
+ * A snapshot of the index is written periodically and at shutdown, the segments it covers are deleted.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.ledger.enabled", havingValue = "true")
+public class CashCardLedger implements MeterBinder, DisposableBean {
+
+    /**
+     * A card of the index, the amount of a card without one is NaN.
+     */
+    public record Balance(String owner, double amount, long version) {
+
+        public Double amountOrNull() {
+            return Double.isNaN(amount) ? null : amount;
+        }
+    }
+
+    private static final long RECOVERY_TIMEOUT_SECONDS = 60;
+
+    private final Path directory;
+
+    private final LedgerLog log;
+
+    private final CashCardShards cashCardShards;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Balance> index = new ConcurrentHashMap<>();
+
+    // cards whose row is behind the index
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch recovered = new CountDownLatch(1);
+
+    private final ScheduledExecutorService snapshots;
+
+    private final Duration snapshotInterval;
+
+    private volatile long snapshotSequence;
+
+    public CashCardLedger(@Value("${cashcard.ledger.directory:ledger}") Path directory,
+                          @Value("${cashcard.ledger.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${cashcard.ledger.force:false}") boolean force,
+                          @Value("${cashcard.ledger.snapshot-interval:1m}") Duration snapshotInterval,
+                          CashCardShards cashCardShards,
+                          DataSource dataSource) {
+        this.directory = directory;
+        this.log = new LedgerLog(directory, segmentSize.toBytes(), force);
+        this.cashCardShards = cashCardShards;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.snapshotInterval = snapshotInterval;
+        this.snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cashcard-ledger-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+    * After ShardRebalancer, so that every card is read from the shard it lives on.
+    */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public void recover() {
+        if (recovered.getCount() == 0) {
+            return;
+        }
+        cashCardShards.scatter(shard -> {
+            jdbcTemplate.query("SELECT ID, AMOUNT, OWNER, VERSION FROM CASH_CARD", rs -> {
+                double amount = rs.getDouble(2);
+                index.put(rs.getLong(1), new Balance(rs.getString(3), rs.wasNull() ? Double.NaN : amount, rs.getLong(4)));
+            });
+            return null;
+        });
+
+        LedgerSnapshot snapshot = LedgerSnapshot.readLatest(directory);
+        long fromSequence = 1;
+        if (snapshot != null) {
+            snapshot.entries().forEach(entry -> apply(entry.cardId(), entry.version(), entry.balance()));
+            fromSequence = snapshot.sequence();
+        }
+        log.replay(fromSequence, record -> apply(record.cardId(), record.version(), record.balance()));
+        snapshotSequence = fromSequence;
+        recovered.countDown();
+
+        long interval = snapshotInterval.toMillis();
+        snapshots.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void apply(long cardId, long version, double balance) {
+        Balance applied = index.computeIfPresent(cardId, (id, current) ->
+                version > current.version() ? new Balance(current.owner(), balance, version) : current);
+        if (applied != null && applied.version() == version) {
+            pending.add(cardId);
+        }
+    }
+
+    /**
+     * The card of the owner, with its current balance and version, or null.
+     */
+    public CashCard find(Long id, String owner) {
+        awaitRecovery();
+        Balance balance = index.get(id);
+        if (balance == null || !balance.owner().equals(owner)) {
+            return null;
+        }
+        return new CashCard(id, balance.amountOrNull(), owner, balance.version());
+    }
+
+    public BalanceChangeResult set(Long id, String owner, Double amount) {
+        return mutate(id, owner, LedgerRecord.Type.SET, amount != null ? amount : Double.NaN);
+    }
+
+    public BalanceChangeResult debit(Long id, String owner, double amount) {
+        return mutate(id, owner, LedgerRecord.Type.DEBIT, amount);
+    }
+
+    public BalanceChangeResult credit(Long id, String owner, double amount) {
+        return mutate(id, owner, LedgerRecord.Type.CREDIT, amount);
+    }
+
+    /*
+    * The new balance is swapped into the index with a compare-and-set, retried on a concurrent change of the
+    * same card, then the record is appended. Two mutations of a card may reach the log in either order,
+    * recovery keeps the highest version. A debit of a card without an amount is refused, like the row update does.
+    */
+    private BalanceChangeResult mutate(Long id, String owner, LedgerRecord.Type type, double amount) {
+        awaitRecovery();
+        while (true) {
+            Balance current = index.get(id);
+            if (current == null || !current.owner().equals(owner)) {
+                return BalanceChangeResult.NOT_FOUND;
+            }
+            if (type == LedgerRecord.Type.DEBIT && !(current.amount() >= amount)) {
+                return BalanceChangeResult.INSUFFICIENT_FUNDS;
+            }
+            double balance = switch (type) {
+                case SET -> amount;
+                case DEBIT -> current.amount() - amount;
+                case CREDIT -> current.amount() + amount;
+            };
+            Balance next = new Balance(owner, balance, current.version() + 1);
+            if (index.replace(id, current, next)) {
+                log.append(id, next.version(), System.currentTimeMillis(), type, amount, balance);
+                pending.add(id);
+                return BalanceChangeResult.APPLIED;
+            }
+        }
+    }
+
+    /**
+     * Adds a card inserted in the database.
+     */
+    public void track(CashCard cashCard) {
+        awaitRecovery();
+        Double amount = cashCard.getAmount();
+        index.put(cashCard.getId(), new Balance(cashCard.getOwner(), amount != null ? amount : Double.NaN, cashCard.getVersion()));
+    }
+
+    /**
+     * Takes the card of the owner out of the index, then has its row deleted by deleteRow. A mutation racing
+     * with it finds no card, as it would after the delete. The card is put back, and its row marked as behind,
+     * if deleteRow fails or finds no row.
+     *
+     * @return false when the owner has no such card
+     */
+    public boolean delete(Long id, String owner, BooleanSupplier deleteRow) {
+        awaitRecovery();
+        Balance current;
+        do {
+            current = index.get(id);
+            if (current == null || !current.owner().equals(owner)) {
+                return false;
+            }
+        } while (!index.remove(id, current));
+
+        boolean deleted = false;
+        try {
+            deleted = deleteRow.getAsBoolean();
+        } finally {
+            if (deleted) {
+                pending.remove(id);
+            } else {
+                // drainPending may have skipped it while it was out
+                index.putIfAbsent(id, current);
+                pending.add(id);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Hands the current balance of every card whose row is behind to the writer. A card the writer fails on
+     * stays pending, the others are written again only if they change in the meantime.
+     *
+     * @return the number of cards written
+     */
+    public int drainPending(BiConsumer<Long, Balance> writer) {
+        if (recovered.getCount() > 0) {
+            return 0;
+        }
+        int written = 0;
+        for (Long id : pending) {
+            pending.remove(id);
+            Balance balance = index.get(id);
+            if (balance == null) {
+                continue;
+            }
+            try {
+                writer.accept(id, balance);
+                written++;
+            } catch (RuntimeException e) {
+                pending.add(id);
+            }
+        }
+        return written;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes a snapshot of the index, then deletes the log segments and the snapshots it replaces.
+     * The sequence is read before the index: every record below it is already reflected in the index.
+     */
+    public synchronized void snapshot() {
+        long sequence = log.nextSequence();
+        if (sequence == snapshotSequence) {
+            return;
+        }
+        List<LedgerSnapshot.Entry> entries = new ArrayList<>(index.size());
+        index.forEach((id, balance) -> entries.add(new LedgerSnapshot.Entry(id, balance.version(), balance.amount())));
+        LedgerSnapshot snapshot = new LedgerSnapshot(sequence, entries);
+        snapshot.write(directory);
+        snapshot.deleteOlder(directory);
+        log.deleteSegmentsBefore(sequence);
+        snapshotSequence = sequence;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            // the log keeps everything since the last snapshot, the next tick tries again
+        }
+    }
+
+    private void awaitRecovery() {
+        try {
+            if (!recovered.await(RECOVERY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The ledger is still recovering");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the ledger to recover", e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cashcard.ledger.sequence", log, l -> l.nextSequence() - 1)
+                .description("Sequence of the last record appended to the ledger log")
+                .register(registry);
+        Gauge.builder("cashcard.ledger.pending", pending, Set::size)
+                .description("Cards whose CASH_CARD row is behind the ledger")
+                .register(registry);
+        Gauge.builder("cashcard.ledger.cards", index, Map::size)
+                .description("Cards in the in-memory index of the ledger")
+                .register(registry);
+    }
+
+    /*
+    * LedgerMaterializer depends on this bean, so it has flushed and stopped by now.
+    */
+    @Override
+    public void destroy() {
+        snapshots.shutdownNow();
+        if (recovered.getCount() == 0) {
+            snapshot();
+        }
+        log.force();
+    }
+}
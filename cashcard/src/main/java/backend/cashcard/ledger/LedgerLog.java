@@ -0,0 +1,199 @@
+package backend.cashcard.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of LedgerRecords in memory-mapped segment files of a fixed size.
+ *
+ * Records are 64 bytes, a power of two, so a record never straddles a page or a segment:
+ * sequence n is always in segment (n - 1) / recordsPerSegment at a fixed offset. Appending reserves the next sequence
+ * with a getAndIncrement, then copies the record into the mapping, so concurrent appends don't wait for each other.
+ * A segment file is created (zero filled, at its full size) and mapped the first time one of its slots is reserved.
+ *
+ * Layout, little endian: sequence, card id, version, timestamp, amount, balance (8 bytes each), type (4),
+ * CRC32C of the first 52 bytes (4), 8 bytes reserved. The CRC is written with the rest of the record,
+ * a slot with a sequence of 0 or a CRC that doesn't match was never written or torn by a crash, and is skipped.
+ * Concurrent appends can leave such a hole before records that were completed, so a replay reads every slot
+ * of every segment rather than stopping at the first invalid one.
+ *
+ * The records are in the page cache as soon as append returns, they survive a crash of the process.
+ * With force, append also writes them through to the disk before returning, to survive a crash of the machine.
+ */
+public class LedgerLog {
+
+    public static final int RECORD_SIZE = 64;
+
+    private static final int CRC_OFFSET = 52;
+
+    private final Path directory;
+
+    private final long recordsPerSegment;
+
+    private final boolean force;
+
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextSequence = new AtomicLong(1);
+
+    public LedgerLog(Path directory, long segmentSize, boolean force) {
+        if (segmentSize < RECORD_SIZE || segmentSize % RECORD_SIZE != 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The segment size must be a multiple of " + RECORD_SIZE + " bytes, up to 2 GB");
+        }
+        this.directory = directory;
+        this.recordsPerSegment = segmentSize / RECORD_SIZE;
+        this.force = force;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the record under the next sequence, the sequence of the given record is ignored.
+     *
+     * @return the sequence of the record
+     */
+    public long append(long cardId, long version, long timestamp, LedgerRecord.Type type, double amount, double balance) {
+        long sequence = nextSequence.getAndIncrement();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(sequence)
+                .putLong(cardId)
+                .putLong(version)
+                .putLong(timestamp)
+                .putDouble(amount)
+                .putDouble(balance)
+                .putInt(type.ordinal());
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt(CRC_OFFSET, (int) crc.getValue());
+
+        MappedByteBuffer segment = segment((sequence - 1) / recordsPerSegment);
+        int offset = (int) ((sequence - 1) % recordsPerSegment) * RECORD_SIZE;
+        segment.put(offset, record.array(), 0, RECORD_SIZE);
+        if (force) {
+            segment.force(offset, RECORD_SIZE);
+        }
+        return sequence;
+    }
+
+    /**
+     * The sequence the next append will get. Every record below it was reserved, not necessarily written yet.
+     */
+    public long nextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Hands every valid record with a sequence of at least fromSequence to the consumer, in no particular order,
+     * and moves the next sequence past the highest one found. Called once, before the first append.
+     *
+     * @return the number of records replayed
+     */
+    public long replay(long fromSequence, Consumer<LedgerRecord> consumer) {
+        long replayed = 0;
+        long highest = Math.max(0, fromSequence - 1);
+        for (long index : segmentIndexes()) {
+            if ((index + 1) * recordsPerSegment < fromSequence) {
+                continue;
+            }
+            MappedByteBuffer segment = segment(index);
+            for (int offset = 0; offset < recordsPerSegment * RECORD_SIZE; offset += RECORD_SIZE) {
+                LedgerRecord record = read(segment, offset);
+                if (record != null && record.sequence() >= fromSequence) {
+                    consumer.accept(record);
+                    highest = Math.max(highest, record.sequence());
+                    replayed++;
+                }
+            }
+        }
+        nextSequence.set(highest + 1);
+        return replayed;
+    }
+
+    /**
+     * Deletes the segments holding only records below the sequence, once a snapshot covers them.
+     */
+    public void deleteSegmentsBefore(long sequence) {
+        for (long index : segmentIndexes()) {
+            if ((index + 1) * recordsPerSegment < sequence) {
+                segments.remove(index);
+                try {
+                    Files.deleteIfExists(segmentPath(index));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the mapped segments through to the disk.
+     */
+    public void force() {
+        segments.values().forEach(MappedByteBuffer::force);
+    }
+
+    private static LedgerRecord read(ByteBuffer segment, int offset) {
+        ByteBuffer record = segment.slice(offset, RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long sequence = record.getLong(0);
+        if (sequence <= 0) {
+            return null;
+        }
+        byte[] bytes = new byte[CRC_OFFSET];
+        record.get(0, bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        int type = record.getInt(48);
+        if ((int) crc.getValue() != record.getInt(CRC_OFFSET) || type < 0 || type >= LedgerRecord.Type.values().length) {
+            return null;
+        }
+        return new LedgerRecord(sequence, record.getLong(8), record.getLong(16), record.getLong(24),
+                LedgerRecord.Type.values()[type], record.getDouble(32), record.getDouble(40));
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments.computeIfAbsent(index, key -> {
+            try (FileChannel channel = FileChannel.open(segmentPath(key),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // mapping past the end of the file extends it, with zeros
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsPerSegment * RECORD_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private List<Long> segmentIndexes() {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Long> indexes = new ArrayList<>();
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith("segment-") && name.endsWith(".log"))
+                    .forEach(name -> indexes.add(Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()))));
+            indexes.sort(null);
+            return indexes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("segment-%020d.log", index));
+    }
+}
@@ -0,0 +1,63 @@
+package backend.cashcard.ledger;
+
+import backend.cashcard.datasource.CashCardShards;
+import backend.cashcard.service.CashCardService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Brings the CASH_CARD rows (and the summaries) of the cards changed in the ledger up to date,
+ * every flush interval, on the shard of each owner. A card changed many times between two flushes
+ * is written once, with its latest balance. Rows that are already as recent are left alone,
+ * so writing a card twice, or after a recovery, is harmless.
+ */
+@Component
+@ConditionalOnProperty(name = "cashcard.ledger.enabled", havingValue = "true")
+public class LedgerMaterializer implements DisposableBean {
+
+    private final CashCardLedger cashCardLedger;
+
+    private final CashCardService cashCardService;
+
+    private final CashCardShards cashCardShards;
+
+    private final ScheduledExecutorService flushes;
+
+    public LedgerMaterializer(CashCardLedger cashCardLedger,
+                              CashCardService cashCardService,
+                              CashCardShards cashCardShards,
+                              @Value("${cashcard.ledger.flush-interval:100ms}") Duration flushInterval) {
+        this.cashCardLedger = cashCardLedger;
+        this.cashCardService = cashCardService;
+        this.cashCardShards = cashCardShards;
+        this.flushes = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cashcard-ledger-materializer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = flushInterval.toMillis();
+        this.flushes.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of cards written
+     */
+    public int flush() {
+        return cashCardLedger.drainPending((id, balance) -> cashCardShards.runOn(cashCardShards.shardOf(balance.owner()),
+                () -> cashCardService.materialize(id, balance.owner(), balance.amountOrNull(), balance.version())));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        flushes.shutdown();
+        flushes.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+}
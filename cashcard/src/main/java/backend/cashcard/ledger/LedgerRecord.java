@@ -0,0 +1,12 @@
+package backend.cashcard.ledger;
+
+/**
+ * One balance mutation of the ledger: the operation, its argument, and the balance and version of the card after it.
+ * A null balance (a card created without an amount) is kept as NaN.
+ */
+public record LedgerRecord(long sequence, long cardId, long version, long timestamp, Type type, double amount, double balance) {
+
+    public enum Type {
+        SET, DEBIT, CREDIT
+    }
+}
@@ -0,0 +1,124 @@
+package backend.cashcard.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/*
+* Balances and versions of every card as of a sequence of the log: replaying the log from that sequence on top of it
+* gives the current balances. Written to a temporary file, synced, then renamed, so a snapshot file is always complete.
+* File: magic, sequence, count, (card id, version, balance) per card, CRC32C of everything before it.
+*/
+record LedgerSnapshot(long sequence, List<Entry> entries) {
+
+    record Entry(long cardId, long version, double balance) {
+    }
+
+    private static final int MAGIC = 0x4C444753;
+
+    void write(Path directory) {
+        Path target = directory.resolve(String.format("snapshot-%020d.snap", sequence));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeLong(sequence);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.cardId());
+                out.writeLong(entry.version());
+                out.writeDouble(entry.balance());
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The snapshot with the highest sequence that is intact, or null.
+     */
+    static LedgerSnapshot readLatest(Path directory) {
+        List<Path> files = files(directory);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            LedgerSnapshot snapshot = read(files.get(i));
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the snapshots older than this one, and the temporary files left by an interrupted write.
+     */
+    void deleteOlder(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".snap.tmp") || name.endsWith(".snap") && sequenceOf(file) < sequence) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static LedgerSnapshot read(Path file) {
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), new CRC32C())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            long sequence = in.readLong();
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(Math.min(Math.max(count, 0), 1 << 20));
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(in.readLong(), in.readLong(), in.readDouble()));
+            }
+            long computed = checked.getChecksum().getValue();
+            return in.readLong() == computed ? new LedgerSnapshot(sequence, entries) : null;
+        } catch (IOException e) {
+            // truncated or unreadable, an older snapshot is used instead
+            return null;
+        }
+    }
+
+    private static List<Path> files(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".snap"))
+                    .sorted(Comparator.comparingLong(LedgerSnapshot::sequenceOf))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".snap".length()));
+    }
+}
@@ -0,0 +1,33 @@
+package backend.cashcard.repository;
+
+import backend.cashcard.entity.CashCard;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+* Sparse fieldset of a card (GET /cashcards?fields=id,amount): only the requested fields are serialized,
+* in the requested order. id and version are always read, for the ETags, amount as well when a cursor needs it.
+*/
+public record CashCardFields(Long id, Double amount, Long version, @JsonValue Map<String, Object> values) {
+
+    public static final List<String> NAMES = List.of("id", "amount", "owner");
+
+    /**
+     * Same fields taken from a card that is already loaded, e.g. by the cache.
+     */
+    public static CashCardFields of(CashCard cashCard, List<String> fields) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, switch (field) {
+                case "id" -> cashCard.getId();
+                case "amount" -> cashCard.getAmount();
+                case "owner" -> cashCard.getOwner();
+                default -> throw new IllegalArgumentException("Unknown field: " + field);
+            });
+        }
+        return new CashCardFields(cashCard.getId(), cashCard.getAmount(), cashCard.getVersion(), values);
+    }
+}
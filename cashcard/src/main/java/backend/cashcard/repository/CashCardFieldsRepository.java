@@ -0,0 +1,28 @@
+package backend.cashcard.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/*
+* Read-only projections of CashCardRepository for sparse fieldsets. The set of fields is only known per
+* request, so instead of one projection type per combination the queries select the requested columns
+* as a Tuple: no entity is instantiated, nothing enters the persistence context, no dirty-checking snapshot.
+* fields must be names of CashCardFields.NAMES.
+*/
+public interface CashCardFieldsRepository {
+
+    CashCardFields findFieldsByIdAndOwner(Long id, String owner, List<String> fields);
+
+    /*
+    * Offset page, minAmount/maxAmount are optional (null means unbounded).
+    */
+    List<CashCardFields> findFieldsByOwner(String owner, List<String> fields, Double minAmount, Double maxAmount, Pageable pageable);
+
+    /*
+    * Keyset page ordered by (amount, id), after the given (amount, id) or from the start when they are null.
+    */
+    List<CashCardFields> findFieldsByOwnerAfter(String owner, List<String> fields, Double minAmount, Double maxAmount,
+                                                Double amount, Long id, Limit limit);
+}
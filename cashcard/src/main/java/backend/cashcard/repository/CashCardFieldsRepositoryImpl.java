@@ -0,0 +1,122 @@
+package backend.cashcard.repository;
+
+import backend.cashcard.entity.CashCard;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Transactional(readOnly = true)
+class CashCardFieldsRepositoryImpl implements CashCardFieldsRepository {
+
+    private final EntityManager entityManager;
+
+    CashCardFieldsRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public CashCardFields findFieldsByIdAndOwner(Long id, String owner, List<String> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<CashCard> cashCard = query.from(CashCard.class);
+        query.multiselect(select(cashCard, fields, false))
+                .where(cb.equal(cashCard.get("id"), id), cb.equal(cashCard.get("owner"), owner));
+
+        List<Tuple> rows = entityManager.createQuery(query).getResultList();
+        return rows.isEmpty() ? null : toFields(rows.get(0), fields, false);
+    }
+
+    @Override
+    public List<CashCardFields> findFieldsByOwner(String owner, List<String> fields, Double minAmount, Double maxAmount, Pageable pageable) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<CashCard> cashCard = query.from(CashCard.class);
+        List<Predicate> where = ownedWithin(cb, cashCard, owner, minAmount, maxAmount);
+        query.multiselect(select(cashCard, fields, false))
+                .where(where.toArray(Predicate[]::new))
+                .orderBy(QueryUtils.toOrders(pageable.getSort(), cashCard, cb));
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return toFields(rows, fields, false);
+    }
+
+    @Override
+    public List<CashCardFields> findFieldsByOwnerAfter(String owner, List<String> fields, Double minAmount, Double maxAmount,
+                                                       Double amount, Long id, Limit limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<CashCard> cashCard = query.from(CashCard.class);
+        List<Predicate> where = ownedWithin(cb, cashCard, owner, minAmount, maxAmount);
+        if (amount != null && id != null) {
+            where.add(cb.or(
+                    cb.greaterThan(cashCard.get("amount"), amount),
+                    cb.and(cb.equal(cashCard.get("amount"), amount), cb.greaterThan(cashCard.get("id"), id))));
+        }
+        query.multiselect(select(cashCard, fields, true))
+                .where(where.toArray(Predicate[]::new))
+                .orderBy(cb.asc(cashCard.get("amount")), cb.asc(cashCard.get("id")));
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(limit.max())
+                .getResultList();
+        return toFields(rows, fields, true);
+    }
+
+    private static List<Predicate> ownedWithin(CriteriaBuilder cb, Root<CashCard> cashCard, String owner, Double minAmount, Double maxAmount) {
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(cashCard.get("owner"), owner));
+        if (minAmount != null) {
+            where.add(cb.greaterThanOrEqualTo(cashCard.get("amount"), minAmount));
+        }
+        if (maxAmount != null) {
+            where.add(cb.lessThanOrEqualTo(cashCard.get("amount"), maxAmount));
+        }
+        return where;
+    }
+
+    private static List<Selection<?>> select(Root<CashCard> cashCard, List<String> fields, boolean withAmount) {
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(cashCard.get("id").alias("id"));
+        selections.add(cashCard.get("version").alias("version"));
+        if (withAmount || fields.contains("amount")) {
+            selections.add(cashCard.get("amount").alias("amount"));
+        }
+        if (fields.contains("owner")) {
+            selections.add(cashCard.get("owner").alias("owner"));
+        }
+        return selections;
+    }
+
+    private static List<CashCardFields> toFields(List<Tuple> rows, List<String> fields, boolean withAmount) {
+        List<CashCardFields> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            result.add(toFields(row, fields, withAmount));
+        }
+        return result;
+    }
+
+    private static CashCardFields toFields(Tuple row, List<String> fields, boolean withAmount) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String field : fields) {
+            values.put(field, row.get(field));
+        }
+        Double amount = withAmount || fields.contains("amount") ? row.get("amount", Double.class) : null;
+        return new CashCardFields(row.get("id", Long.class), amount, row.get("version", Long.class), values);
+    }
+}
@@ -1,19 +1,137 @@
 package backend.cashcard.repository;
 
 import backend.cashcard.entity.CashCard;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+* Query methods run in read-only transactions unless annotated otherwise: outside of a read-write transaction
+* they are served by the read replicas (see DataSourceConfig), inside one they join it and stay on the primary.
+*/
 @Repository
-public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long> {
+@Transactional(readOnly = true)
+public interface CashCardRepository extends CrudRepository<CashCard, Long>, PagingAndSortingRepository<CashCard, Long>,
+        CashCardFieldsRepository {
 
     CashCard findByIdAndOwner(Long id, String owner);
 
-    Page<CashCard> findByOwner(String owner, PageRequest pageRequest);
+    /*
+    * A Slice only fetches one extra row to know if there is a next page,
+    * unlike a Page it doesn't need a COUNT(*) of all the cards of the owner.
+    */
+    Slice<CashCard> findByOwner(String owner, Pageable pageable);
+
+    Slice<CashCard> findByOwnerAndAmountBetween(String owner, Double minAmount, Double maxAmount, Pageable pageable);
 
     boolean existsByIdAndOwner(Long id, String owner);
 
+    /*
+    * Many cards of the owner in one query: WHERE owner = ? AND id IN (...), rows come back in no particular order.
+    */
+    List<CashCard> findByOwnerAndIdIn(String owner, Collection<Long> ids);
+
+    /*
+    * Only the version of the card, enough to answer a conditional GET without loading the entity.
+    */
+    @Query("select c.version from CashCard c where c.id = :id and c.owner = :owner")
+    Optional<Long> findVersionByIdAndOwner(@Param("id") Long id, @Param("owner") String owner);
+
+    /*
+    * Every card of the owner, read through a JDBC cursor 500 rows at a time.
+    * Must be consumed inside a transaction and closed, read-only entities don't keep a dirty-checking snapshot.
+    */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select c from CashCard c where c.owner = :owner order by c.id")
+    Stream<CashCard> streamByOwner(@Param("owner") String owner);
+
+    /*
+    * Single round trip mutations: the owner check is part of the WHERE clause, and unlike save()/deleteById()
+    * no entity is loaded first. They return the amount the card had before (nothing when no row matched,
+    * i.e. the owner has no such card), which CashCardService needs to maintain the summary of the owner.
+    * The UPDATE or DELETE is wrapped in an H2 data change delta table, SELECT ... FROM OLD TABLE (...):
+    * no locking read of the card beforehand. Bulk statements bypass @Version, so the update increments it.
+    */
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            SELECT AMOUNT FROM OLD TABLE (
+                UPDATE CASH_CARD SET AMOUNT = :amount, VERSION = VERSION + 1 WHERE ID = :id AND OWNER = :owner)
+            """)
+    List<Double> updateAmountByIdAndOwnerReturningOldAmount(@Param("id") Long id, @Param("owner") String owner, @Param("amount") Double amount);
+
+    @Transactional
+    @Query(nativeQuery = true, value = "SELECT AMOUNT FROM OLD TABLE (DELETE FROM CASH_CARD WHERE ID = :id AND OWNER = :owner)")
+    List<Double> deleteByIdAndOwnerReturningOldAmount(@Param("id") Long id, @Param("owner") String owner);
+
+    /*
+    * Atomic balance changes: the arithmetic happens in the database under the row lock of the UPDATE,
+    * so concurrent debits and credits on the same card can't overwrite each other.
+    * A debit that would make the balance negative doesn't match any row.
+    */
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            SELECT AMOUNT FROM OLD TABLE (
+                UPDATE CASH_CARD SET AMOUNT = AMOUNT - :amount, VERSION = VERSION + 1
+                WHERE ID = :id AND OWNER = :owner AND AMOUNT >= :amount)
+            """)
+    List<Double> debitByIdAndOwnerReturningOldAmount(@Param("id") Long id, @Param("owner") String owner, @Param("amount") Double amount);
+
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            SELECT AMOUNT FROM OLD TABLE (
+                UPDATE CASH_CARD SET AMOUNT = AMOUNT + :amount, VERSION = VERSION + 1 WHERE ID = :id AND OWNER = :owner)
+            """)
+    List<Double> creditByIdAndOwnerReturningOldAmount(@Param("id") Long id, @Param("owner") String owner, @Param("amount") Double amount);
+
+    /*
+    * Writes a balance of the ledger (see LedgerMaterializer) with the version it has there.
+    * Matches no row when the row already has that version or a later one.
+    */
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            SELECT AMOUNT FROM OLD TABLE (
+                UPDATE CASH_CARD SET AMOUNT = :amount, VERSION = :version WHERE ID = :id AND OWNER = :owner AND VERSION < :version)
+            """)
+    List<Double> materializeByIdAndOwnerReturningOldAmount(@Param("id") Long id, @Param("owner") String owner,
+                                                           @Param("amount") Double amount, @Param("version") Long version);
+
+    /*
+    * Keyset (seek) pagination, ordered by (amount, id) within [minAmount, maxAmount].
+    * The first page starts from the beginning, the next ones continue after the last (amount, id) seen,
+    * so the cost of a page doesn't depend on how deep it is.
+    */
+    List<CashCard> findByOwnerAndAmountBetweenOrderByAmountAscIdAsc(String owner, Double minAmount, Double maxAmount, Limit limit);
+
+    @Query("""
+            select c from CashCard c
+            where c.owner = :owner
+              and c.amount between :minAmount and :maxAmount
+              and (c.amount > :amount or (c.amount = :amount and c.id > :id))
+            order by c.amount asc, c.id asc
+            """)
+    List<CashCard> findByOwnerAfter(@Param("owner") String owner,
+                                    @Param("amount") Double amount,
+                                    @Param("id") Long id,
+                                    @Param("minAmount") Double minAmount,
+                                    @Param("maxAmount") Double maxAmount,
+                                    Limit limit);
+
 }
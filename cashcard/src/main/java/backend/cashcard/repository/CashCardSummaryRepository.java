@@ -0,0 +1,133 @@
+package backend.cashcard.repository;
+
+import backend.cashcard.entity.CashCardSummary;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+@Transactional(readOnly = true)
+public interface CashCardSummaryRepository extends CrudRepository<CashCardSummary, String> {
+
+    /*
+    * Creates the summary of the owner from the committed cards, unless it already exists.
+    * Two concurrent calls for the same owner can still both get past NOT EXISTS, the loser fails on the primary key.
+    */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO CASH_CARD_SUMMARY (OWNER, CARD_COUNT, TOTAL_AMOUNT, MIN_AMOUNT, MAX_AMOUNT)
+            SELECT :owner, COUNT(*), COALESCE(SUM(AMOUNT), 0), MIN(AMOUNT), MAX(AMOUNT)
+            FROM CASH_CARD WHERE OWNER = :owner
+            HAVING NOT EXISTS (SELECT 1 FROM CASH_CARD_SUMMARY WHERE OWNER = :owner)
+            """)
+    int insertFromCashCards(@Param("owner") String owner);
+
+    /*
+    * The summary the owner would get from insertFromCashCards, for an owner that has no row yet.
+    */
+    @Query("""
+            select new backend.cashcard.entity.CashCardSummary(:owner, count(c), coalesce(sum(c.amount), 0), min(c.amount), max(c.amount))
+            from CashCard c where c.owner = :owner
+            """)
+    CashCardSummary summarizeCashCards(@Param("owner") String owner);
+
+    /*
+    * Incremental maintenance, each one a single UPDATE of the summary row in the transaction of the card change.
+    * The row lock it takes serializes the changes of one owner, always after the lock on the card row.
+    * min/max only need a query on CASH_CARD when the card that held the extreme leaves it,
+    * which the (owner, amount, id) index answers.
+    */
+    @Transactional
+    @Modifying
+    @Query("""
+            update CashCardSummary s set
+              s.cardCount = s.cardCount + :count,
+              s.totalAmount = s.totalAmount + :total,
+              s.minAmount = case when s.minAmount is null or :min < s.minAmount then :min else s.minAmount end,
+              s.maxAmount = case when s.maxAmount is null or :max > s.maxAmount then :max else s.maxAmount end
+            where s.owner = :owner
+            """)
+    int include(@Param("owner") String owner, @Param("count") long count, @Param("total") double total,
+                @Param("min") Double min, @Param("max") Double max);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update CashCardSummary s set
+              s.totalAmount = s.totalAmount + :delta,
+              s.minAmount = case
+                when :oldAmount <= s.minAmount then (select min(c.amount) from CashCard c where c.owner = :owner)
+                when :newAmount < s.minAmount or s.minAmount is null then :newAmount
+                else s.minAmount end,
+              s.maxAmount = case
+                when :oldAmount >= s.maxAmount then (select max(c.amount) from CashCard c where c.owner = :owner)
+                when :newAmount > s.maxAmount or s.maxAmount is null then :newAmount
+                else s.maxAmount end
+            where s.owner = :owner
+            """)
+    int replace(@Param("owner") String owner, @Param("oldAmount") Double oldAmount, @Param("newAmount") Double newAmount,
+                @Param("delta") double delta);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update CashCardSummary s set
+              s.cardCount = s.cardCount - 1,
+              s.totalAmount = case when s.cardCount = 1 then 0 else s.totalAmount - :total end,
+              s.minAmount = case
+                when :oldAmount <= s.minAmount then (select min(c.amount) from CashCard c where c.owner = :owner)
+                else s.minAmount end,
+              s.maxAmount = case
+                when :oldAmount >= s.maxAmount then (select max(c.amount) from CashCard c where c.owner = :owner)
+                else s.maxAmount end
+            where s.owner = :owner
+            """)
+    int remove(@Param("owner") String owner, @Param("oldAmount") Double oldAmount, @Param("total") double total);
+
+    /*
+    * Consistency check: owners whose summary doesn't match an aggregation of CASH_CARD
+    * (totals compared to the cent, they are sums of doubles added in a different order).
+    */
+    @Query(nativeQuery = true, value = """
+            SELECT a.OWNER FROM (
+                SELECT OWNER, COUNT(*) CARD_COUNT, COALESCE(SUM(AMOUNT), 0) TOTAL_AMOUNT, MIN(AMOUNT) MIN_AMOUNT, MAX(AMOUNT) MAX_AMOUNT
+                FROM CASH_CARD GROUP BY OWNER
+            ) a
+            LEFT JOIN CASH_CARD_SUMMARY s ON s.OWNER = a.OWNER
+            WHERE s.OWNER IS NULL
+               OR s.CARD_COUNT <> a.CARD_COUNT
+               OR ABS(s.TOTAL_AMOUNT - a.TOTAL_AMOUNT) >= 0.005
+               OR s.MIN_AMOUNT IS DISTINCT FROM a.MIN_AMOUNT
+               OR s.MAX_AMOUNT IS DISTINCT FROM a.MAX_AMOUNT
+            UNION
+            SELECT s.OWNER FROM CASH_CARD_SUMMARY s
+            WHERE (s.CARD_COUNT <> 0 OR s.TOTAL_AMOUNT <> 0 OR s.MIN_AMOUNT IS NOT NULL OR s.MAX_AMOUNT IS NOT NULL)
+              AND NOT EXISTS (SELECT 1 FROM CASH_CARD c WHERE c.OWNER = s.OWNER)
+            """)
+    List<String> findInconsistentOwners();
+
+    @Transactional
+    @Query(nativeQuery = true, value = "SELECT OWNER FROM CASH_CARD_SUMMARY WHERE OWNER = :owner FOR UPDATE")
+    String lockByOwner(@Param("owner") String owner);
+
+    /*
+    * Recomputes the summary of the owner from CASH_CARD, run with the row locked by lockByOwner.
+    */
+    @Transactional
+    @Modifying
+    @Query("""
+            update CashCardSummary s set
+              s.cardCount = (select count(c) from CashCard c where c.owner = :owner),
+              s.totalAmount = coalesce((select sum(c.amount) from CashCard c where c.owner = :owner), 0),
+              s.minAmount = (select min(c.amount) from CashCard c where c.owner = :owner),
+              s.maxAmount = (select max(c.amount) from CashCard c where c.owner = :owner)
+            where s.owner = :owner
+            """)
+    int rebuild(@Param("owner") String owner);
+}
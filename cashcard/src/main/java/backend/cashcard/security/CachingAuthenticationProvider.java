@@ -0,0 +1,54 @@
+package backend.cashcard.security;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Wraps the BCrypt-backed DaoAuthenticationProvider: the first request of a user pays the
+ * BCrypt verification, repeated requests with the same credentials within the TTL of the
+ * CredentialCache only pay an HMAC.
+ * Failed attempts are never cached, a wrong password always goes through BCrypt.
+ * Neither is a verification during which the user was changed (see CredentialCache.generation).
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+
+    private final CredentialCache credentialCache;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, CredentialCache credentialCache) {
+        this.delegate = delegate;
+        this.credentialCache = credentialCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!(authentication.getCredentials() instanceof String password)) {
+            return delegate.authenticate(authentication);
+        }
+
+        String digest = credentialCache.digest(authentication.getName(), password);
+        CredentialCache.VerifiedUser verifiedUser = credentialCache.get(digest);
+        if (verifiedUser != null) {
+            UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                    verifiedUser.principal(), null, verifiedUser.authorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+
+        long generation = credentialCache.generation(authentication.getName());
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.isAuthenticated()) {
+            credentialCache.put(digest, new CredentialCache.VerifiedUser(
+                    authentication.getName(), result.getPrincipal(), result.getAuthorities()), generation);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
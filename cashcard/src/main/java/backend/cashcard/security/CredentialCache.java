@@ -0,0 +1,128 @@
+package backend.cashcard.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Short-lived cache of successful username/password verifications.
+ * The key is an HMAC-SHA256 of the credentials under a random per-process secret, so neither
+ * the raw password nor a digest that could be brute forced offline is ever kept in memory.
+ * Entries are dropped by username when the user is changed in the UserDetailsManager.
+ * A verification that was still running against the old password when the user changed must not be cached
+ * after that eviction: as in CashCardCache, every username hashes to a stripe whose generation is bumped before
+ * the entries are removed, and put(digest, user, generation) only stores if it did not move since the caller
+ * read it, before verifying.
+ *
+ * Every digest works on a clone of one initialized Mac rather than a ThreadLocal one: with virtual
+ * threads every request runs on a new thread, so a ThreadLocal would build and key a Mac per request
+ * and keep it reachable for nothing.
+ */
+@Component
+public class CredentialCache implements MeterBinder {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int GENERATION_STRIPES = 64;
+
+    private final Cache<String, VerifiedUser> cache;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final Mac prototype;
+
+    public CredentialCache(@Value("${cashcard.security.credential-cache.maximum-size:10000}") long maximumSize,
+                           @Value("${cashcard.security.credential-cache.ttl:60s}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        SecretKeySpec key = new SecretKeySpec(secret, HMAC_ALGORITHM);
+        try {
+            this.prototype = Mac.getInstance(HMAC_ALGORITHM);
+            this.prototype.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    public String digest(String username, String password) {
+        Mac instance;
+        try {
+            instance = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HmacSHA256 Mac cannot be cloned", e);
+        }
+        instance.update(username.getBytes(StandardCharsets.UTF_8));
+        instance.update((byte) 0);
+        return Base64.getEncoder().encodeToString(instance.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public VerifiedUser get(String digest) {
+        return cache.getIfPresent(digest);
+    }
+
+    public void put(String digest, VerifiedUser verifiedUser) {
+        cache.put(digest, verifiedUser);
+    }
+
+    /**
+     * The generation of the user, to be read before verifying the credentials and handed to put.
+     */
+    public long generation(String username) {
+        return generations.get(stripe(username));
+    }
+
+    /**
+     * Caches the verification unless the user was evicted since the generation was read.
+     */
+    public void put(String digest, VerifiedUser verifiedUser, long generation) {
+        int stripe = stripe(verifiedUser.username());
+        cache.asMap().compute(digest, (k, current) -> generations.get(stripe) == generation ? verifiedUser : current);
+    }
+
+    /**
+     * Drops every cached verification of the user, whatever password it was made with.
+     */
+    public void evict(String username) {
+        generations.incrementAndGet(stripe(username));
+        cache.asMap().values().removeIf(verifiedUser -> verifiedUser.username().equals(username));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "credentials", Tags.empty());
+    }
+
+    private static int stripe(String username) {
+        return (username.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    public record VerifiedUser(String username, Object principal, Collection<? extends GrantedAuthority> authorities) {
+    }
+}
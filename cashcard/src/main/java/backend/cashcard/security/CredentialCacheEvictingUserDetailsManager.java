@@ -0,0 +1,57 @@
+package backend.cashcard.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+/**
+ * InMemoryUserDetailsManager that drops the cached verifications of a user whenever
+ * the password or the roles of that user change, so a revoked password or role stops
+ * working right away instead of when the credential cache entry expires.
+ */
+public class CredentialCacheEvictingUserDetailsManager extends InMemoryUserDetailsManager {
+
+    private final CredentialCache credentialCache;
+
+    public CredentialCacheEvictingUserDetailsManager(CredentialCache credentialCache, UserDetails... users) {
+        this.credentialCache = credentialCache;
+        for (UserDetails user : users) {
+            createUser(user);
+        }
+    }
+
+    @Override
+    public void createUser(UserDetails user) {
+        super.createUser(user);
+        credentialCache.evict(user.getUsername());
+    }
+
+    @Override
+    public void updateUser(UserDetails user) {
+        super.updateUser(user);
+        credentialCache.evict(user.getUsername());
+    }
+
+    @Override
+    public void deleteUser(String username) {
+        super.deleteUser(username);
+        credentialCache.evict(username);
+    }
+
+    @Override
+    public void changePassword(String oldPassword, String newPassword) {
+        super.changePassword(oldPassword, newPassword);
+        Authentication currentUser = SecurityContextHolder.getContext().getAuthentication();
+        if (currentUser != null) {
+            credentialCache.evict(currentUser.getName());
+        }
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        UserDetails updated = super.updatePassword(user, newPassword);
+        credentialCache.evict(user.getUsername());
+        return updated;
+    }
+}
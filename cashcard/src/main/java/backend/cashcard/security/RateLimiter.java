@@ -0,0 +1,114 @@
+package backend.cashcard.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Token buckets per principal and per request class, see RateLimitFilter.
+ *
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (GCRA): the instant at which
+ * the bucket would be full again. A request is allowed when pushing that instant one emission interval further
+ * keeps it within burst intervals from now, which is a token bucket of capacity burst refilled at perSecond.
+ * Taking a token is one CAS, retried only when the same principal raced on the same bucket, no lock is held
+ * and nothing is allocated. Throttled requests are counted on LongAdders (striped counters).
+ *
+ * A bucket left alone for burst intervals is full again, so it can be evicted without losing anything:
+ * buckets expire after that much idle time, which bounds the memory to the recently active principals.
+ */
+@Component
+public class RateLimiter implements MeterBinder {
+
+    public enum RequestClass {
+        READ, WRITE;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Map<RequestClass, Limit> limits = new EnumMap<>(RequestClass.class);
+
+    public RateLimiter(@Value("${cashcard.rate-limit.read.per-second:500}") double readsPerSecond,
+                       @Value("${cashcard.rate-limit.read.burst:1000}") int readBurst,
+                       @Value("${cashcard.rate-limit.write.per-second:250}") double writesPerSecond,
+                       @Value("${cashcard.rate-limit.write.burst:500}") int writeBurst,
+                       @Value("${cashcard.rate-limit.maximum-principals:100000}") long maximumPrincipals) {
+        limits.put(RequestClass.READ, new Limit(readsPerSecond, readBurst, maximumPrincipals));
+        limits.put(RequestClass.WRITE, new Limit(writesPerSecond, writeBurst, maximumPrincipals));
+    }
+
+    /**
+     * Takes a token from the bucket of the principal.
+     *
+     * @return 0 when the request is allowed, otherwise how many nanoseconds until it would be
+     */
+    public long tryAcquire(String principal, RequestClass requestClass) {
+        return limits.get(requestClass).tryAcquire(principal, System.nanoTime());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        limits.forEach((requestClass, limit) -> {
+            FunctionCounter.builder("cashcard.ratelimit.throttled", limit.throttled, LongAdder::sum)
+                    .description("Requests rejected with 429 Too Many Requests")
+                    .tag("class", requestClass.tag())
+                    .register(registry);
+            Gauge.builder("cashcard.ratelimit.buckets", limit.buckets, buckets -> buckets.estimatedSize())
+                    .description("Principals with a token bucket in memory")
+                    .tag("class", requestClass.tag())
+                    .register(registry);
+        });
+    }
+
+    private static final class Limit {
+        final long emissionInterval;
+        final long tolerance;
+        final Cache<String, AtomicLong> buckets;
+        final LongAdder throttled = new LongAdder();
+        // a new bucket is full: its theoretical arrival time is already past
+        final Function<String, AtomicLong> newBucket;
+
+        Limit(double perSecond, int burst, long maximumPrincipals) {
+            if (perSecond <= 0 || burst < 1) {
+                throw new IllegalArgumentException("A rate limit needs a positive rate and a burst of at least 1");
+            }
+            this.emissionInterval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            this.tolerance = emissionInterval * burst;
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maximumPrincipals)
+                    .expireAfterAccess(Duration.ofNanos(Math.max(tolerance, TimeUnit.SECONDS.toNanos(1))))
+                    .build();
+            this.newBucket = principal -> new AtomicLong(System.nanoTime() - tolerance);
+        }
+
+        long tryAcquire(String principal, long now) {
+            AtomicLong bucket = buckets.get(principal, newBucket);
+            while (true) {
+                long arrival = bucket.get();
+                long next = (arrival - now < 0 ? now : arrival) + emissionInterval;
+                long excess = next - now - tolerance;
+                if (excess > 0) {
+                    throttled.increment();
+                    return excess;
+                }
+                if (bucket.compareAndSet(arrival, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+}
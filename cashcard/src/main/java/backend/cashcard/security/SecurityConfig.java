@@ -1,16 +1,21 @@
 package backend.cashcard.security;
 
+import backend.cashcard.audit.AuditFilter;
+import backend.cashcard.audit.AuditLog;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.Customizer;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.provisioning.InMemoryUserDetailsManager;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 /**
  * In the latest versions of Spring Security (5.0 and above), WebSecurityConfigurerAdapter has been removed. Instead,
@@ -24,11 +29,19 @@ public class SecurityConfig {
 
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, RateLimiter rateLimiter, ObjectProvider<AuditLog> auditLog,
+                                                   @Value("${cashcard.rate-limit.enabled:true}") boolean rateLimited) throws Exception {
+        auditLog.ifAvailable(log -> http.addFilterBefore(new AuditFilter(log), BasicAuthenticationFilter.class));
+        if (rateLimited) {
+            // not a bean: Spring Boot would register it a second time, as a servlet filter of its own
+            http.addFilterAfter(new RateLimitFilter(rateLimiter), BasicAuthenticationFilter.class);
+        }
         http
                 //any request to /cashcards/** should require authentication.
                 .authorizeHttpRequests(request -> request
                                 .requestMatchers("/h2-console/**").permitAll() // Allow all to access H2
+                                .requestMatchers("/actuator/health", "/actuator/health/**").permitAll() // probes
+                                .requestMatchers("/actuator/**").hasRole("ADMIN") // metrics and anything exposed later
                                 .requestMatchers("/cashcards/**").hasRole("CARD-OWNER") //we enable the RBAC-based authorization!
                                 //request.requestMatchers("/cashcards/**").authenticated()
                 )
@@ -43,8 +56,22 @@ public class SecurityConfig {
         return new BCryptPasswordEncoder();
     }
 
+    /**
+     * BCrypt is deliberately slow, running it on every Basic Auth request dominated our CPU profile.
+     * Successful verifications are cached for a short TTL (see CredentialCache).
+     */
     @Bean
-    UserDetailsService testOnlyUsers(PasswordEncoder passwordEncoder){
+    AuthenticationProvider authenticationProvider(CredentialCacheEvictingUserDetailsManager users,
+                                                  PasswordEncoder passwordEncoder,
+                                                  CredentialCache credentialCache) {
+        DaoAuthenticationProvider bcryptProvider = new DaoAuthenticationProvider(passwordEncoder);
+        bcryptProvider.setUserDetailsService(users);
+        bcryptProvider.setUserDetailsPasswordService(users);
+        return new CachingAuthenticationProvider(bcryptProvider, credentialCache);
+    }
+
+    @Bean
+    CredentialCacheEvictingUserDetailsManager testOnlyUsers(PasswordEncoder passwordEncoder, CredentialCache credentialCache){
         User.UserBuilder users = User.builder();
         UserDetails felix = users
                                 .username("felix")
@@ -64,7 +91,13 @@ public class SecurityConfig {
                                             .roles("CARD-OWNER")
                                             .build();
 
-        return new InMemoryUserDetailsManager(felix, userWhoOwnsNoCards, kumar);
+        UserDetails admin = users
+                                            .username("admin")
+                                            .password(passwordEncoder.encode("adm789"))
+                                            .roles("ADMIN")
+                                            .build();
+
+        return new CredentialCacheEvictingUserDetailsManager(credentialCache, felix, userWhoOwnsNoCards, kumar, admin);
     }
 
 }
@@ -0,0 +1,76 @@
+package backend.cashcard.service;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.repository.CashCardRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Writes every card of an owner as NDJSON (one JSON object per line), or as a sequence of Smile values
+ * (one header, then the cards back to back, the field names and owner written once for all of them).
+ * Cards are read from a database cursor and detached once written, so memory stays flat
+ * however many cards the owner has.
+ */
+@Service
+public class CashCardExportService {
+
+    private final CashCardRepository cashCardRepository;
+
+    private final EntityManager entityManager;
+
+    private final ObjectWriter writer;
+
+    private final ObjectWriter smileWriter;
+
+    public CashCardExportService(CashCardRepository cashCardRepository, EntityManager entityManager, ObjectMapper objectMapper,
+                                 SmileFactory smileFactory) {
+        this.cashCardRepository = cashCardRepository;
+        this.entityManager = entityManager;
+        this.writer = objectMapper.writerFor(CashCard.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.smileWriter = objectMapper.copyWith(smileFactory).writerFor(CashCard.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * @return the number of cards written
+     */
+    @Transactional(readOnly = true)
+    public long export(String owner, OutputStream out) throws IOException {
+        long exported = 0;
+        try (Stream<CashCard> cashCards = cashCardRepository.streamByOwner(owner)) {
+            for (CashCard cashCard : (Iterable<CashCard>) cashCards::iterator) {
+                writer.writeValue(out, cashCard);
+                out.write('\n');
+                entityManager.detach(cashCard);
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * @return the number of cards written
+     */
+    @Transactional(readOnly = true)
+    public long exportSmile(String owner, OutputStream out) throws IOException {
+        long exported = 0;
+        try (Stream<CashCard> cashCards = cashCardRepository.streamByOwner(owner);
+             SequenceWriter sequence = smileWriter.writeValues(out)) {
+            for (CashCard cashCard : (Iterable<CashCard>) cashCards::iterator) {
+                sequence.write(cashCard);
+                entityManager.detach(cashCard);
+                exported++;
+            }
+        }
+        return exported;
+    }
+}
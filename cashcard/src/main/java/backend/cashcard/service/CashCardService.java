@@ -0,0 +1,175 @@
+package backend.cashcard.service;
+
+import backend.cashcard.entity.CashCard;
+import backend.cashcard.ledger.CashCardLedger;
+import backend.cashcard.repository.CashCardRepository;
+import backend.cashcard.repository.CashCardSummaryRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Card changes and the maintenance of the summary of the owner, in one transaction each.
+ *
+ * Every change of a card is still a single statement, which also returns the amount the card had before
+ * (see CashCardRepository), the summary is then adjusted by the difference with a single UPDATE
+ * (see CashCardSummaryRepository). Locks are always taken card first, summary second.
+ * The summary row is created before the first change of the owner, outside of the transaction
+ * (see CashCardSummaryService.ensureExists).
+ *
+ * With the ledger enabled, balance changes go to CashCardLedger instead and reach the rows through materialize.
+ */
+@Service
+public class CashCardService {
+
+    public enum BalanceChangeResult {
+        APPLIED, NOT_FOUND, INSUFFICIENT_FUNDS
+    }
+
+    private final CashCardRepository cashCardRepository;
+
+    private final CashCardSummaryRepository cashCardSummaryRepository;
+
+    private final CashCardSummaryService cashCardSummaryService;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // null unless cashcard.ledger.enabled
+    private final CashCardLedger cashCardLedger;
+
+    public CashCardService(CashCardRepository cashCardRepository,
+                           CashCardSummaryRepository cashCardSummaryRepository,
+                           CashCardSummaryService cashCardSummaryService,
+                           TransactionTemplate transactionTemplate,
+                           ObjectProvider<CashCardLedger> cashCardLedger) {
+        this.cashCardRepository = cashCardRepository;
+        this.cashCardSummaryRepository = cashCardSummaryRepository;
+        this.cashCardSummaryService = cashCardSummaryService;
+        this.transactionTemplate = transactionTemplate;
+        this.cashCardLedger = cashCardLedger.getIfAvailable();
+    }
+
+    public CashCard create(CashCard cashCard) {
+        return createAll(cashCard.getOwner(), List.of(cashCard)).get(0);
+    }
+
+    /**
+     * Inserts the cards (in JDBC batches) and adds them to the summary with a single UPDATE.
+     */
+    public List<CashCard> createAll(String owner, List<CashCard> cashCards) {
+        cashCardSummaryService.ensureExists(owner);
+        List<CashCard> created = transactionTemplate.execute(status -> {
+            List<CashCard> saved = new ArrayList<>(cashCards.size());
+            cashCardRepository.saveAll(cashCards).forEach(saved::add);
+
+            List<Double> amounts = saved.stream().map(CashCard::getAmount).filter(Objects::nonNull).toList();
+            double total = amounts.stream().mapToDouble(Double::doubleValue).sum();
+            Double min = amounts.stream().min(Double::compare).orElse(null);
+            Double max = amounts.stream().max(Double::compare).orElse(null);
+            cashCardSummaryRepository.include(owner, saved.size(), total, min, max);
+            return saved;
+        });
+        if (cashCardLedger != null) {
+            created.forEach(cashCardLedger::track);
+        }
+        return created;
+    }
+
+    /**
+     * @return false when the owner has no such card
+     */
+    public boolean updateAmount(Long id, String owner, Double amount) {
+        if (cashCardLedger != null) {
+            return cashCardLedger.set(id, owner, amount) == BalanceChangeResult.APPLIED;
+        }
+        cashCardSummaryService.ensureExists(owner);
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            List<Double> oldAmount = cashCardRepository.updateAmountByIdAndOwnerReturningOldAmount(id, owner, amount);
+            if (oldAmount.isEmpty()) {
+                return false;
+            }
+            replace(owner, oldAmount.get(0), amount);
+            return true;
+        }));
+    }
+
+    /**
+     * @return false when the owner has no such card
+     */
+    public boolean delete(Long id, String owner) {
+        cashCardSummaryService.ensureExists(owner);
+        if (cashCardLedger != null) {
+            return cashCardLedger.delete(id, owner, () -> deleteRow(id, owner));
+        }
+        return deleteRow(id, owner);
+    }
+
+    private boolean deleteRow(Long id, String owner) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            List<Double> oldAmount = cashCardRepository.deleteByIdAndOwnerReturningOldAmount(id, owner);
+            if (oldAmount.isEmpty()) {
+                return false;
+            }
+            cashCardSummaryRepository.remove(owner, oldAmount.get(0), orZero(oldAmount.get(0)));
+            return true;
+        }));
+    }
+
+    public BalanceChangeResult debit(Long id, String owner, double amount) {
+        if (cashCardLedger != null) {
+            return cashCardLedger.debit(id, owner, amount);
+        }
+        cashCardSummaryService.ensureExists(owner);
+        return transactionTemplate.execute(status -> {
+            List<Double> oldAmount = cashCardRepository.debitByIdAndOwnerReturningOldAmount(id, owner, amount);
+            if (oldAmount.isEmpty()) {
+                // only a failed debit pays a second query, to tell the two failures apart
+                return cashCardRepository.existsByIdAndOwner(id, owner)
+                        ? BalanceChangeResult.INSUFFICIENT_FUNDS
+                        : BalanceChangeResult.NOT_FOUND;
+            }
+            replace(owner, oldAmount.get(0), oldAmount.get(0) - amount);
+            return BalanceChangeResult.APPLIED;
+        });
+    }
+
+    public BalanceChangeResult credit(Long id, String owner, double amount) {
+        if (cashCardLedger != null) {
+            return cashCardLedger.credit(id, owner, amount);
+        }
+        cashCardSummaryService.ensureExists(owner);
+        return transactionTemplate.execute(status -> {
+            List<Double> oldAmount = cashCardRepository.creditByIdAndOwnerReturningOldAmount(id, owner, amount);
+            if (oldAmount.isEmpty()) {
+                return BalanceChangeResult.NOT_FOUND;
+            }
+            replace(owner, oldAmount.get(0), oldAmount.get(0) + amount);
+            return BalanceChangeResult.APPLIED;
+        });
+    }
+
+    /**
+     * Writes a balance of the ledger to the row of the card and its summary, unless the row is already at that version.
+     */
+    public void materialize(Long id, String owner, Double amount, long version) {
+        cashCardSummaryService.ensureExists(owner);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<Double> oldAmount = cashCardRepository.materializeByIdAndOwnerReturningOldAmount(id, owner, amount, version);
+            if (!oldAmount.isEmpty()) {
+                replace(owner, oldAmount.get(0), amount);
+            }
+        });
+    }
+
+    private void replace(String owner, Double oldAmount, Double newAmount) {
+        cashCardSummaryRepository.replace(owner, oldAmount, newAmount, orZero(newAmount) - orZero(oldAmount));
+    }
+
+    private static double orZero(Double amount) {
+        return amount != null ? amount : 0;
+    }
+}
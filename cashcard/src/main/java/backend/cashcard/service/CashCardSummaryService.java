@@ -0,0 +1,90 @@
+package backend.cashcard.service;
+
+import backend.cashcard.datasource.CashCardShards;
+import backend.cashcard.entity.CashCardSummary;
+import backend.cashcard.repository.CashCardSummaryRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the CASH_CARD_SUMMARY rows: creates the row of an owner before its first change,
+ * serves GET /cashcards/summary, and checks the rows against CASH_CARD.
+ *
+ * A summary row is created from the committed cards of the owner, so cards inserted without going through
+ * CashCardService (data.sql, bulk loads) are counted as soon as the owner's row is created.
+ * Rows are never deleted, the owners known to have one are remembered to skip the insert afterwards.
+ * Reads never create one: an owner without a row yet gets its cards aggregated on the fly.
+ */
+@Service
+public class CashCardSummaryService {
+
+    private final CashCardSummaryRepository cashCardSummaryRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final CashCardShards cashCardShards;
+
+    private final Set<String> ownersWithSummary = ConcurrentHashMap.newKeySet();
+
+    public CashCardSummaryService(CashCardSummaryRepository cashCardSummaryRepository, TransactionTemplate transactionTemplate,
+                                  CashCardShards cashCardShards) {
+        this.cashCardSummaryRepository = cashCardSummaryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.cashCardShards = cashCardShards;
+    }
+
+    /**
+     * Makes sure the owner has a summary row. Must be called outside the transaction of the card change:
+     * a duplicate key on a concurrent creation would otherwise roll that transaction back.
+     */
+    public void ensureExists(String owner) {
+        if (ownersWithSummary.contains(owner)) {
+            return;
+        }
+        try {
+            cashCardSummaryRepository.insertFromCashCards(owner);
+        } catch (DataIntegrityViolationException e) {
+            // created concurrently by another request of the owner
+        }
+        ownersWithSummary.add(owner);
+    }
+
+    public CashCardSummary find(String owner) {
+        return cashCardSummaryRepository.findById(owner)
+                .orElseGet(() -> cashCardSummaryRepository.summarizeCashCards(owner));
+    }
+
+    /**
+     * Compares every summary with an aggregation of CASH_CARD and rebuilds the ones that differ.
+     * Runs once at startup, it scans the whole table of every shard, the shards in parallel.
+     *
+     * @return the owners whose summary was rebuilt
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public List<String> checkAndRepair() {
+        return cashCardShards.scatter(shard -> {
+            List<String> inconsistentOwners = cashCardSummaryRepository.findInconsistentOwners();
+            inconsistentOwners.forEach(this::rebuild);
+            return inconsistentOwners;
+        }).stream().flatMap(List::stream).toList();
+    }
+
+    /*
+    * The summary row is locked before CASH_CARD is aggregated: card changes of the owner that are in flight
+    * hold that lock until they commit, so the aggregation sees them all, and the ones after wait for the rebuild.
+    */
+    private void rebuild(String owner) {
+        ensureExists(owner);
+        transactionTemplate.executeWithoutResult(status -> {
+            cashCardSummaryRepository.lockByOwner(owner);
+            cashCardSummaryRepository.rebuild(owner);
+        });
+    }
+}
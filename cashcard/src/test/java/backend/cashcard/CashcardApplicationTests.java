@@ -1,25 +1,76 @@
 package backend.cashcard;
 
+import backend.cashcard.audit.AuditLog;
+import backend.cashcard.cache.CashCardCache;
+import backend.cashcard.datasource.CashCardShards;
+import backend.cashcard.datasource.ShardRebalancer;
 import backend.cashcard.entity.CashCard;
+import backend.cashcard.ledger.CashCardLedger;
+import backend.cashcard.ledger.LedgerMaterializer;
+import backend.cashcard.security.CredentialCache;
+import backend.cashcard.security.CredentialCacheEvictingUserDetailsManager;
+import backend.cashcard.service.CashCardSummaryService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.minidev.json.JSONArray;
 import org.json.JSONException;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.unit.DataSize;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import java.io.ByteArrayInputStream;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import javax.sql.DataSource;
 
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -37,6 +88,35 @@ class CashcardApplicationTests {
 	@Autowired
 	TestRestTemplate restTemplate;
 
+	@Autowired
+	CashCardCache cashCardCache;
+
+	@Autowired
+	CredentialCache credentialCache;
+
+	@Autowired
+	CredentialCacheEvictingUserDetailsManager users;
+
+	@Autowired
+	PasswordEncoder passwordEncoder;
+
+	@Autowired
+	CashCardSummaryService cashCardSummaryService;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	AuditLog auditLog;
+
+	@LocalServerPort
+	int port;
+
+	private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
 	/**
 	 * If we run the test without implementing the rest controller we get
 	 * org.opentest4j.AssertionFailedError:
@@ -262,6 +342,29 @@ class CashcardApplicationTests {
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
 	}
 
+	@Test
+	void shouldRejectACashCardWithoutAnAmount() {
+		ResponseEntity<Void> created = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards", Map.of("owner", "felix"), Void.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		ResponseEntity<Void> batch = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/batch", List.of(Map.of("amount", 1.00), Map.of()), Void.class);
+		assertThat(batch.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		ResponseEntity<Void> updated = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/99", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, null, null)), Void.class);
+		assertThat(updated.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		ResponseEntity<String> page = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?cursor=&size=10", String.class);
+		assertThat(JsonPath.parse(page.getBody()).read("$.length()", Integer.class)).isEqualTo(3);
+	}
+
 	@Test
 	@DirtiesContext // annotation to all tests which change the data. If we don't, then these tests could affect the result of other tests in the file.
 	void shouldDeleteAnExistingCashCard() {
@@ -303,4 +406,1117 @@ class CashcardApplicationTests {
 		assertThat(getRespose.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
 
+	@Test
+	void shouldServeRepeatedReadsFromTheCache() {
+		long hitsBefore = cashCardCache.stats().hitCount();
+
+		for (int i = 0; i < 3; i++) {
+			ResponseEntity<String> response = restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity("/cashcards/102", String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		}
+
+		assertThat(cashCardCache.stats().hitCount() - hitsBefore).isGreaterThanOrEqualTo(2);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotServeAStaleCashCardAfterAnUpdate() {
+		ResponseEntity<String> before = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		assertThat(JsonPath.parse(before.getBody()).read("$.amount", Double.class)).isEqualTo(1.00);
+
+		HttpEntity<CashCard> request = new HttpEntity<>(new CashCard(null, 42.00, null));
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/100", HttpMethod.PUT, request, Void.class);
+
+		ResponseEntity<String> after = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		assertThat(JsonPath.parse(after.getBody()).read("$.amount", Double.class)).isEqualTo(42.00);
+
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/100", HttpMethod.DELETE, null, Void.class);
+
+		ResponseEntity<String> deleted = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/100", String.class);
+		assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldReadFromTheReplicaExceptRightAfterAWriteOfTheSameUser() {
+		// fresh users: the ones of data.sql may have written within the read-your-writes window of another test
+		for (String username : List.of("writer", "reader")) {
+			users.createUser(User.builder()
+					.username(username)
+					.password(passwordEncoder.encode("secret"))
+					.roles("CARD-OWNER")
+					.build());
+		}
+
+		long replicaBefore = connectionsAcquired("replica-0");
+		ResponseEntity<String> read = restTemplate
+				.withBasicAuth("writer", "secret")
+				.getForEntity("/cashcards", String.class);
+		assertThat(read.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(connectionsAcquired("replica-0")).isGreaterThan(replicaBefore);
+
+		ResponseEntity<Void> created = restTemplate
+				.withBasicAuth("writer", "secret")
+				.postForEntity("/cashcards", new CashCard(null, 19.99), Void.class);
+		assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+		// the writer reads its own write from the primary, the other user still reads from the replica
+		replicaBefore = connectionsAcquired("replica-0");
+		long primaryBefore = connectionsAcquired("primary");
+		ResponseEntity<String> afterWrite = restTemplate
+				.withBasicAuth("writer", "secret")
+				.getForEntity("/cashcards", String.class);
+		assertThat(JsonPath.parse(afterWrite.getBody()).read("$[*].amount", JSONArray.class)).containsExactly(19.99);
+		assertThat(connectionsAcquired("replica-0")).isEqualTo(replicaBefore);
+		assertThat(connectionsAcquired("primary")).isGreaterThan(primaryBefore);
+
+		restTemplate.withBasicAuth("reader", "secret").getForEntity("/cashcards", String.class);
+		assertThat(connectionsAcquired("replica-0")).isGreaterThan(replicaBefore);
+	}
+
+	private long connectionsAcquired(String pool) {
+		return meterRegistry.get("hikaricp.connections.acquire").tag("pool", pool).timer().count();
+	}
+
+	@Test
+	void shouldSkipBCryptForRepeatedCredentials() {
+		restTemplate.withBasicAuth("kumar2", "xyz789").getForEntity("/cashcards/102", String.class);
+		long hitsBefore = credentialCache.stats().hitCount();
+
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(credentialCache.stats().hitCount()).isGreaterThan(hitsBefore);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldRejectACachedPasswordOnceItIsChanged() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		users.updateUser(User.builder()
+				.username("felix")
+				.password(passwordEncoder.encode("new-secret"))
+				.roles("CARD-OWNER")
+				.build());
+
+		response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+
+		response = restTemplate
+				.withBasicAuth("felix", "new-secret")
+				.getForEntity("/cashcards/99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldRejectACachedUserOnceTheRoleIsRevoked() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		users.updateUser(User.builder()
+				.username("kumar2")
+				.password(passwordEncoder.encode("xyz789"))
+				.roles("NON-OWNER")
+				.build());
+
+		response = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	@Test
+	void shouldNotCacheAVerificationThatRacedWithAnUpdateOfTheUser() {
+		String digest = credentialCache.digest("racing-user", "old-secret");
+		long generation = credentialCache.generation("racing-user");
+		CredentialCache.VerifiedUser verifiedUser = new CredentialCache.VerifiedUser("racing-user", "racing-user", List.of());
+
+		// the password changes while the old one is still being verified
+		credentialCache.evict("racing-user");
+		credentialCache.put(digest, verifiedUser, generation);
+		assertThat(credentialCache.get(digest)).isNull();
+
+		credentialCache.put(digest, verifiedUser, credentialCache.generation("racing-user"));
+		assertThat(credentialCache.get(digest)).isEqualTo(verifiedUser);
+		credentialCache.evict("racing-user");
+	}
+
+	@Test
+	void shouldWalkThroughAllCashCardsWithACursor() {
+		List<Double> amounts = new ArrayList<>();
+		String cursor = "";
+		int pages = 0;
+		do {
+			ResponseEntity<String> response = restTemplate
+					.withBasicAuth("felix", "abc123")
+					.getForEntity("/cashcards?size=1&cursor=" + cursor, String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+			JSONArray page = JsonPath.parse(response.getBody()).read("$..amount");
+			assertThat(page).hasSize(1);
+			amounts.add((Double) page.get(0));
+
+			cursor = response.getHeaders().getFirst("X-Next-Cursor");
+			pages++;
+		} while (cursor != null && pages < 10);
+
+		assertThat(amounts).containsExactly(1.00, 123.45, 150.00);
+	}
+
+	@Test
+	void shouldRejectAMalformedCursor() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?cursor=not-a-cursor", String.class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNotLoseAnyConcurrentDebitOrCredit() throws Exception {
+		int threads = 8;
+		int operationsPerThread = 25;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<Void>> clients = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				clients.add(() -> {
+					for (int i = 0; i < operationsPerThread; i++) {
+						assertThat(postBalanceChange("/cashcards/101/credit", 2.00).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+						assertThat(postBalanceChange("/cashcards/101/debit", 1.00).getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+					}
+					return null;
+				});
+			}
+			for (Future<Void> client : executor.invokeAll(clients)) {
+				client.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/101", String.class);
+		Double amount = JsonPath.parse(response.getBody()).read("$.amount", Double.class);
+		assertThat(amount).isEqualTo(150.00 + threads * operationsPerThread * 1.00);
+		// the summary went through the same changes
+		assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+	}
+
+	@Test
+	void shouldRejectADebitThatWouldOverdrawTheCashCard() {
+		assertThat(postBalanceChange("/cashcards/100/debit", 1.01).getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+		assertThat(postBalanceChange("/cashcards/100/debit", -5.00).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(postBalanceChange("/cashcards/102/debit", 1.00).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(postBalanceChange("/cashcards/102/credit", 1.00).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	private ResponseEntity<Void> postBalanceChange(String url, double amount) {
+		return restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity(url, Map.of("amount", amount), Void.class);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCreateCashCardsInABatch() {
+		List<CashCard> newCashCards = List.of(
+				new CashCard(null, 10.00),
+				new CashCard(null, 20.00),
+				new CashCard(null, 30.00));
+		ResponseEntity<String> createResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.postForEntity("/cashcards/batch", newCashCards, String.class);
+
+		assertThat(createResponse.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		JSONArray locations = JsonPath.parse(createResponse.getBody()).read("$[*]");
+		assertThat(locations).hasSize(3);
+
+		List<Double> amounts = new ArrayList<>();
+		for (Object location : locations) {
+			ResponseEntity<String> getResponse = restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity(URI.create((String) location), String.class);
+			assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+			amounts.add(JsonPath.parse(getResponse.getBody()).read("$.amount", Double.class));
+		}
+		assertThat(amounts).containsExactly(10.00, 20.00, 30.00);
+	}
+
+	@Test
+	void shouldRejectAnEmptyBatch() {
+		ResponseEntity<String> createResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.postForEntity("/cashcards/batch", List.of(), String.class);
+
+		assertThat(createResponse.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsNdjson() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/export", String.class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().toString()).startsWith("application/x-ndjson");
+
+		List<Number> ids = new ArrayList<>();
+		for (String line : response.getBody().split("\n")) {
+			ids.add(JsonPath.parse(line).read("$.id"));
+		}
+		assertThat(ids).containsExactly(99, 100, 101);
+	}
+
+	@Test
+	void shouldExportAllCashCardsAsSmileValues() throws Exception {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setAccept(List.of(SMILE));
+		ResponseEntity<byte[]> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/export", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getHeaders().getContentType().isCompatibleWith(SMILE)).isTrue();
+
+		List<Long> ids = new ArrayList<>();
+		try (MappingIterator<CashCard> cashCards = new SmileMapper().readerFor(CashCard.class).readValues(response.getBody())) {
+			cashCards.forEachRemaining(cashCard -> ids.add(cashCard.getId()));
+		}
+		assertThat(ids).containsExactly(99L, 100L, 101L);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldNegotiateSmileAndCborForRequestAndResponseBodies() throws Exception {
+		SmileMapper smileMapper = new SmileMapper();
+		HttpHeaders smile = new HttpHeaders();
+		smile.setContentType(SMILE);
+		smile.setAccept(List.of(SMILE));
+		ResponseEntity<Void> createResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.exchange("/cashcards", HttpMethod.POST,
+						new HttpEntity<>(smileMapper.writeValueAsBytes(Map.of("amount", 250.00)), smile), Void.class);
+		assertThat(createResponse.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+
+		ResponseEntity<byte[]> listResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.exchange("/cashcards", HttpMethod.GET, new HttpEntity<>(smile), byte[].class);
+		assertThat(listResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(listResponse.getHeaders().getContentType().isCompatibleWith(SMILE)).isTrue();
+		assertThat(listResponse.getHeaders().getVary()).map(String::toLowerCase).contains("accept");
+		List<CashCard> cashCards = smileMapper.readValue(listResponse.getBody(), new TypeReference<>() {});
+		assertThat(cashCards).extracting(CashCard::getAmount).containsExactlyInAnyOrder(200.00, 250.00);
+		assertThat(cashCards).extracting(CashCard::getOwner).containsOnly("kumar2");
+
+		HttpHeaders cbor = new HttpHeaders();
+		cbor.setAccept(List.of(MediaType.APPLICATION_CBOR));
+		ResponseEntity<byte[]> getResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.exchange("/cashcards/102", HttpMethod.GET, new HttpEntity<>(cbor), byte[].class);
+		assertThat(getResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(getResponse.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_CBOR)).isTrue();
+		assertThat(getResponse.getHeaders().getVary()).map(String::toLowerCase).contains("accept");
+		CashCard cashCard = new CBORMapper().readValue(getResponse.getBody(), CashCard.class);
+		assertThat(cashCard.getId()).isEqualTo(102L);
+		assertThat(cashCard.getAmount()).isEqualTo(200.00);
+
+		// JSON stays the default
+		ResponseEntity<String> jsonResponse = restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/102", String.class);
+		assertThat(jsonResponse.getHeaders().getContentType().isCompatibleWith(MediaType.APPLICATION_JSON)).isTrue();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldCompressLargeResponsesButNotSingleCashCards() throws Exception {
+		List<CashCard> newCashCards = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			newCashCards.add(new CashCard(null, 10.00 + i));
+		}
+		restTemplate.withBasicAuth("kumar2", "xyz789").postForEntity("/cashcards/batch", newCashCards, String.class);
+
+		// java.net.http doesn't decompress by itself, unlike the client behind TestRestTemplate
+		HttpResponse<byte[]> page = getAcceptingGzip("/cashcards?size=100");
+		assertThat(page.statusCode()).isEqualTo(200);
+		assertThat(page.headers().firstValue("ETag")).isPresent();
+		assertThat(page.headers().firstValue("Content-Encoding")).hasValue("gzip");
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page.body()))) {
+			JSONArray amounts = JsonPath.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8)).read("$[*].amount");
+			assertThat(amounts).hasSize(100);
+		}
+
+		// under min-response-size, even with a weak ETag
+		HttpResponse<byte[]> single = getAcceptingGzip("/cashcards/102");
+		assertThat(single.statusCode()).isEqualTo(200);
+		assertThat(single.headers().firstValue("ETag")).hasValueSatisfying(eTag -> assertThat(eTag).startsWith("W/"));
+		assertThat(single.headers().firstValue("Content-Encoding")).isEmpty();
+		assertThat(single.headers().firstValueAsLong("Content-Length")).hasValue(single.body().length);
+		assertThat(JsonPath.parse(new String(single.body(), StandardCharsets.UTF_8)).read("$.id", Integer.class)).isEqualTo(102);
+	}
+
+	private HttpResponse<byte[]> getAcceptingGzip(String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+				.header("Authorization", "Basic " + Base64.getEncoder().encodeToString("kumar2:xyz789".getBytes(StandardCharsets.UTF_8)))
+				.header("Accept-Encoding", "gzip")
+				.build();
+		return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	@Test
+	void shouldPublishEndpointAndRepositoryMetrics() {
+		restTemplate.withBasicAuth("felix", "abc123").getForEntity("/cashcards", String.class);
+		restTemplate.withBasicAuth("felix", "abc123").getForEntity("/cashcards/99999", String.class);
+
+		ResponseEntity<String> endpoint = restTemplate.withBasicAuth("admin", "adm789").getForEntity(
+				"/actuator/metrics/http.server.requests?tag=uri:{uri}&tag=status:404", String.class, "/cashcards/{id}");
+		assertThat(endpoint.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(JsonPath.parse(endpoint.getBody()).read("$.measurements[?(@.statistic == 'COUNT')].value", JSONArray.class))
+				.isNotEmpty();
+
+		ResponseEntity<String> repository = restTemplate.withBasicAuth("admin", "adm789").getForEntity(
+				"/actuator/metrics/spring.data.repository.invocations?tag=method:findByOwner", String.class);
+		assertThat(repository.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		ResponseEntity<String> hibernate = restTemplate.withBasicAuth("admin", "adm789")
+				.getForEntity("/actuator/metrics/hibernate.statements", String.class);
+		assertThat(hibernate.getStatusCode()).isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	void shouldOnlyExposeHealthToAnonymousAndMetricsToAdmins() {
+		assertThat(restTemplate.getForEntity("/actuator/health", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(restTemplate.getForEntity("/actuator/metrics", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.UNAUTHORIZED);
+		assertThat(restTemplate.withBasicAuth("felix", "abc123").getForEntity("/actuator/metrics", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(restTemplate.withBasicAuth("admin", "adm789").getForEntity("/actuator/metrics", String.class).getStatusCode())
+				.isEqualTo(HttpStatus.OK);
+	}
+
+	@Test
+	void shouldFilterCashCardsByAmountRange() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?minAmount=100&maxAmount=150", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		JSONArray amounts = JsonPath.parse(response.getBody()).read("$..amount");
+		assertThat(amounts).containsExactly(123.45, 150.00);
+
+		response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?cursor=&size=1&maxAmount=100", String.class);
+		amounts = JsonPath.parse(response.getBody()).read("$..amount");
+		assertThat(amounts).containsExactly(1.00);
+		assertThat(response.getHeaders().getFirst("X-Next-Cursor")).isNull();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldAnswerAConditionalGetOfAnUnchangedCashCardWith304() {
+		ResponseEntity<String> first = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/101", String.class);
+		String eTag = first.getHeaders().getETag();
+		// weak: the same version goes out as JSON, Smile or CBOR
+		assertThat(eTag).startsWith("W/");
+
+		HttpHeaders conditional = new HttpHeaders();
+		conditional.setIfNoneMatch(eTag);
+		ResponseEntity<String> cached = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/101", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(cached.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(cached.getBody()).isNull();
+		assertThat(cached.getHeaders().getVary()).map(String::toLowerCase).contains("accept");
+
+		// not cached: answered from the version column only
+		cashCardCache.invalidate("felix", 101L);
+		ResponseEntity<String> uncached = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/101", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(uncached.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+		assertThat(uncached.getHeaders().getETag()).isEqualTo(eTag);
+
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/101/credit", Map.of("amount", 1.00), Void.class);
+
+		ResponseEntity<String> changed = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/101", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(changed.getHeaders().getETag()).isNotEqualTo(eTag);
+		assertThat(JsonPath.parse(changed.getBody()).read("$.amount", Double.class)).isEqualTo(151.00);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldAnswerAConditionalGetOfAnUnchangedPageWith304() {
+		ResponseEntity<String> first = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?page=0&size=2", String.class);
+		String eTag = first.getHeaders().getETag();
+		assertThat(eTag).isNotNull();
+
+		HttpHeaders conditional = new HttpHeaders();
+		conditional.setIfNoneMatch(eTag);
+		ResponseEntity<String> unchanged = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards?page=0&size=2", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/100/debit", Map.of("amount", 0.50), Void.class);
+
+		ResponseEntity<String> changed = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards?page=0&size=2", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(changed.getHeaders().getETag()).isNotEqualTo(eTag);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldChangeTheETagOfAFullLastPageOnceANextPageExists() {
+		ResponseEntity<String> last = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?cursor=&size=3", String.class);
+		assertThat(last.getHeaders().getFirst("X-Next-Cursor")).isNull();
+
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, 500.00), Void.class);
+
+		HttpHeaders conditional = new HttpHeaders();
+		conditional.setIfNoneMatch(last.getHeaders().getETag());
+		ResponseEntity<String> full = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards?cursor=&size=3", HttpMethod.GET, new HttpEntity<>(conditional), String.class);
+		assertThat(full.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(full.getHeaders().getFirst("X-Next-Cursor")).isNotNull();
+		assertThat(full.getBody()).isEqualTo(last.getBody());
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldStreamChangesAndReplayTheMissedOnesAfterAReconnect() throws Exception {
+		HttpResponse<Stream<String>> stream = openChanges(null);
+		assertThat(stream.statusCode()).isEqualTo(200);
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/101/credit", Map.of("amount", 1.00), Void.class);
+
+		Map<String, String> updated = nextEvent(stream);
+		assertThat(updated).containsEntry("event", "updated").containsEntry("data", "{\"id\":101}");
+		stream.body().close();
+
+		// missed while disconnected
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/100", HttpMethod.DELETE, null, Void.class);
+
+		HttpResponse<Stream<String>> resumed = openChanges(updated.get("id"));
+		assertThat(nextEvent(resumed)).containsEntry("event", "deleted").containsEntry("data", "{\"id\":100}");
+		resumed.body().close();
+
+		HttpResponse<Stream<String>> unknown = openChanges("from-another-process-1");
+		assertThat(nextEvent(unknown)).containsEntry("event", "resync");
+		unknown.body().close();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldMaintainTheSummaryOfTheCashCardsOfTheOwner() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/summary", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		DocumentContext summary = JsonPath.parse(response.getBody());
+		assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(3);
+		assertThat(summary.read("$.totalAmount", Double.class)).isCloseTo(274.45, within(0.001));
+		assertThat(summary.read("$.minAmount", Double.class)).isEqualTo(1.00);
+		assertThat(summary.read("$.maxAmount", Double.class)).isEqualTo(150.00);
+
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards", new CashCard(null, 500.00), Void.class);
+		// 1.00 was the minimum, the next one comes from CASH_CARD
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.exchange("/cashcards/100", HttpMethod.DELETE, null, Void.class);
+		restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/101/debit", Map.of("amount", 50.00), Void.class);
+
+		summary = JsonPath.parse(restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/summary", String.class).getBody());
+		assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(3);
+		assertThat(summary.read("$.totalAmount", Double.class)).isCloseTo(723.45, within(0.001));
+		assertThat(summary.read("$.minAmount", Double.class)).isEqualTo(100.00);
+		assertThat(summary.read("$.maxAmount", Double.class)).isEqualTo(500.00);
+		assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+
+		ResponseEntity<String> noCards = restTemplate
+				.withBasicAuth("user-owns-no-cards", "qrs456")
+				.getForEntity("/cashcards/summary", String.class);
+		assertThat(noCards.getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldServeTheSummaryOfAnOwnerWithoutARowWithoutCreatingIt() {
+		jdbcTemplate.update("DELETE FROM CASH_CARD_SUMMARY WHERE OWNER = 'felix'");
+
+		DocumentContext summary = JsonPath.parse(restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/summary", String.class).getBody());
+		assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(3);
+		assertThat(summary.read("$.totalAmount", Double.class)).isCloseTo(274.45, within(0.001));
+		assertThat(summary.read("$.minAmount", Double.class)).isEqualTo(1.00);
+		assertThat(jdbcTemplate.queryForObject(
+				"SELECT COUNT(*) FROM CASH_CARD_SUMMARY WHERE OWNER = 'felix'", Integer.class)).isZero();
+	}
+
+	@Test
+	@DirtiesContext
+	void shouldRebuildASummaryThatDriftedFromTheCashCards() {
+		jdbcTemplate.update("UPDATE CASH_CARD_SUMMARY SET CARD_COUNT = 7, TOTAL_AMOUNT = 1 WHERE OWNER = 'kumar2'");
+
+		assertThat(cashCardSummaryService.checkAndRepair()).containsExactly("kumar2");
+
+		DocumentContext summary = JsonPath.parse(restTemplate
+				.withBasicAuth("kumar2", "xyz789")
+				.getForEntity("/cashcards/summary", String.class).getBody());
+		assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(1);
+		assertThat(summary.read("$.totalAmount", Double.class)).isEqualTo(200.00);
+		assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+	}
+
+	@Test
+	void shouldFetchManyCashCardsByIdInRequestOrder() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?ids=101,99,102,1000000,99", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+
+		DocumentContext documentContext = JsonPath.parse(response.getBody());
+		JSONArray ids = documentContext.read("$.cashCards[*].id");
+		assertThat(ids).containsExactly(101, 99);
+		// 102 belongs to kumar2
+		JSONArray missing = documentContext.read("$.missing");
+		assertThat(missing).containsExactly(102, 1000000);
+
+		ResponseEntity<String> posted = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/lookup", List.of(100, 101), String.class);
+		assertThat(JsonPath.parse(posted.getBody()).read("$.cashCards[*].amount", JSONArray.class)).containsExactly(1.00, 150.00);
+
+		List<Long> tooMany = new ArrayList<>();
+		for (long id = 0; id <= 100; id++) {
+			tooMany.add(id);
+		}
+		ResponseEntity<String> rejected = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.postForEntity("/cashcards/lookup", tooMany, String.class);
+		assertThat(rejected.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	void shouldReturnOnlyTheRequestedFields() {
+		ResponseEntity<String> response = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/99?fields=amount", String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isEqualTo("{\"amount\":123.45}");
+		assertThat(response.getHeaders().getETag()).isNotNull();
+
+		ResponseEntity<String> page = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?fields=amount,id&page=0&size=3&sort=amount,desc", String.class);
+		assertThat(page.getBody()).isEqualTo("[{\"amount\":150.0,\"id\":101},{\"amount\":123.45,\"id\":99},{\"amount\":1.0,\"id\":100}]");
+
+		ResponseEntity<String> cursorPage = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?fields=id&cursor=&size=2", String.class);
+		assertThat(cursorPage.getBody()).isEqualTo("[{\"id\":100},{\"id\":99}]");
+		String next = cursorPage.getHeaders().getFirst("X-Next-Cursor");
+		cursorPage = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?fields=id&cursor={cursor}&size=2", String.class, next);
+		assertThat(cursorPage.getBody()).isEqualTo("[{\"id\":101}]");
+
+		ResponseEntity<String> unknownField = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards?fields=id,password", String.class);
+		assertThat(unknownField.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+
+		ResponseEntity<String> notOwned = restTemplate
+				.withBasicAuth("felix", "abc123")
+				.getForEntity("/cashcards/102?fields=id", String.class);
+		assertThat(notOwned.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	private HttpResponse<Stream<String>> openChanges(String lastEventId) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/cashcards/changes"))
+				.header("Authorization", "Basic " + Base64.getEncoder().encodeToString("felix:abc123".getBytes(StandardCharsets.UTF_8)))
+				.header("Accept", "text/event-stream");
+		if (lastEventId != null) {
+			request.header("Last-Event-ID", lastEventId);
+		}
+		return HttpClient.newHttpClient().send(request.build(), HttpResponse.BodyHandlers.ofLines());
+	}
+
+	/**
+	 * Reads the next event (skipping heartbeat comments) as its id, event and data fields.
+	 */
+	private static Map<String, String> nextEvent(HttpResponse<Stream<String>> stream) throws Exception {
+		Iterator<String> lines = stream.body().iterator();
+		return CompletableFuture.supplyAsync(() -> {
+			Map<String, String> fields = new HashMap<>();
+			while (lines.hasNext()) {
+				String line = lines.next();
+				if (line.isEmpty()) {
+					if (fields.containsKey("event")) {
+						return fields;
+					}
+					fields.clear();
+				} else if (!line.startsWith(":")) {
+					fields.put(line.substring(0, line.indexOf(':')), line.substring(line.indexOf(':') + 1));
+				}
+			}
+			return fields;
+		}).get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void shouldAuditEveryRequestToTheCashCardsIncludingRejectedOnes() throws Exception {
+		restTemplate.withBasicAuth("felix", "abc123").getForEntity("/cashcards/424242", String.class);
+		restTemplate.withBasicAuth("felix", "BAD-PASSWORD").getForEntity("/cashcards/434343", String.class);
+
+		DocumentContext found = JsonPath.parse(awaitAuditLine("\"id\":424242"));
+		assertThat(found.read("$.principal", String.class)).isEqualTo("felix");
+		assertThat(found.read("$.method", String.class)).isEqualTo("GET");
+		assertThat(found.read("$.path", String.class)).isEqualTo("/cashcards/{id}");
+		assertThat(found.read("$.status", Integer.class)).isEqualTo(404);
+		assertThat(found.read("$.latencyMicros", Long.class)).isPositive();
+
+		// rejected by Basic Auth, before any handler is mapped
+		DocumentContext rejected = JsonPath.parse(awaitAuditLine("\"/cashcards/434343\""));
+		assertThat(rejected.read("$.principal", String.class)).isNull();
+		assertThat(rejected.read("$.id", Long.class)).isNull();
+		assertThat(rejected.read("$.status", Integer.class)).isEqualTo(401);
+	}
+
+	private String awaitAuditLine(String fragment) throws Exception {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			try (Stream<String> lines = Files.lines(auditLog.file())) {
+				Optional<String> line = lines.filter(l -> l.contains(fragment)).findFirst();
+				if (line.isPresent()) {
+					return line.get();
+				}
+			}
+			Thread.sleep(20);
+		}
+		throw new AssertionError("No audit line with " + fragment);
+	}
+
+
+	/**
+	 * Limits low enough to be reached by a test, in a context of their own.
+	 */
+	@Nested
+	@DirtiesContext
+	@TestPropertySource(properties = {
+			"cashcard.rate-limit.write.burst=3",
+			"cashcard.rate-limit.write.per-second=0.1"
+	})
+	class RateLimiting {
+
+		@Autowired
+		TestRestTemplate restTemplate;
+
+		@Autowired
+		MeterRegistry meterRegistry;
+
+		@Test
+		void shouldThrottleTheWritesOfOnePrincipalWithoutSlowingDownTheOthers() {
+			for (int i = 0; i < 3; i++) {
+				assertThat(credit("felix", "abc123", "/cashcards/101/credit").getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+			}
+			ResponseEntity<Void> throttled = credit("felix", "abc123", "/cashcards/101/credit");
+			assertThat(throttled.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+			assertThat(Long.parseLong(throttled.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(1L, 10L);
+
+			// reads of the same principal and writes of the others have buckets of their own
+			ResponseEntity<String> read = restTemplate
+					.withBasicAuth("felix", "abc123")
+					.getForEntity("/cashcards/101", String.class);
+			assertThat(read.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(JsonPath.parse(read.getBody()).read("$.amount", Double.class)).isCloseTo(150.03, within(0.001));
+			assertThat(credit("kumar2", "xyz789", "/cashcards/102/credit").getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+
+			assertThat(meterRegistry.get("cashcard.ratelimit.throttled").tag("class", "write").functionCounter().count())
+					.isEqualTo(1);
+		}
+
+		private ResponseEntity<Void> credit(String username, String password, String url) {
+			return restTemplate
+					.withBasicAuth(username, password)
+					.postForEntity(url, Map.of("amount", 0.01), Void.class);
+		}
+	}
+
+	@Nested
+	@DirtiesContext
+	@TestPropertySource(properties = {
+			"cashcard.ledger.enabled=true",
+			"cashcard.ledger.segment-size=4KB",
+			// rows and snapshots are only written when the tests ask for it
+			"cashcard.ledger.flush-interval=1h",
+			"cashcard.ledger.snapshot-interval=1h"
+	})
+	class Ledger {
+
+		static final Path LEDGER_DIRECTORY = Path.of("target", "ledger-" + UUID.randomUUID());
+
+		@DynamicPropertySource
+		static void ledgerDirectory(DynamicPropertyRegistry registry) {
+			registry.add("cashcard.ledger.directory", LEDGER_DIRECTORY::toString);
+		}
+
+		@Autowired
+		TestRestTemplate restTemplate;
+
+		@Autowired
+		CashCardLedger cashCardLedger;
+
+		@Autowired
+		LedgerMaterializer ledgerMaterializer;
+
+		@Autowired
+		CashCardShards cashCardShards;
+
+		@Autowired
+		CashCardSummaryService cashCardSummaryService;
+
+		@Autowired
+		DataSource dataSource;
+
+		@Test
+		void shouldServeBalancesFromTheLedgerAndRecoverThemWithoutTheRows() {
+			assertThat(balanceChange("felix", "abc123", "/cashcards/101/credit", 10.0)).isEqualTo(HttpStatus.NO_CONTENT);
+			assertThat(balanceChange("felix", "abc123", "/cashcards/99/debit", 23.45)).isEqualTo(HttpStatus.NO_CONTENT);
+			assertThat(balanceChange("felix", "abc123", "/cashcards/100/debit", 5.0)).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+			restTemplate.withBasicAuth("felix", "abc123")
+					.exchange("/cashcards/100", HttpMethod.PUT, new HttpEntity<>(new CashCard(null, 7.0)), Void.class);
+
+			ResponseEntity<String> response = restTemplate.withBasicAuth("felix", "abc123").getForEntity("/cashcards/101", String.class);
+			assertThat(JsonPath.parse(response.getBody()).read("$.amount", Double.class)).isCloseTo(160.0, within(0.001));
+			assertThat(response.getHeaders().getETag()).isEqualTo("W/\"101-1\"");
+			// the rows are behind until the next flush
+			assertThat(amountOfRow(101L, "felix")).isEqualTo(150.00);
+
+			// a crash: a second ledger over the same directory, nothing was flushed nor snapshotted
+			CashCardLedger restarted = restartedLedger();
+			assertThat(restarted.find(101L, "felix").getAmount()).isCloseTo(160.0, within(0.001));
+			assertThat(restarted.find(99L, "felix").getAmount()).isCloseTo(100.0, within(0.001));
+			assertThat(restarted.find(100L, "felix").getAmount()).isEqualTo(7.0);
+			assertThat(restarted.find(100L, "felix").getVersion()).isEqualTo(1);
+			assertThat(restarted.find(101L, "kumar2")).isNull();
+
+			assertThat(ledgerMaterializer.flush()).isGreaterThanOrEqualTo(3);
+			assertThat(amountOfRow(101L, "felix")).isCloseTo(160.0, within(0.001));
+			assertThat(amountOfRow(100L, "felix")).isEqualTo(7.0);
+			assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+		}
+
+		@Test
+		void shouldLookUpTheBalancesOfTheLedgerNotTheCachedOnes() {
+			// cached before the change
+			restTemplate.withBasicAuth("felix", "abc123").getForEntity("/cashcards?ids=99,101", String.class);
+			assertThat(balanceChange("felix", "abc123", "/cashcards/99/credit", 1.0)).isEqualTo(HttpStatus.NO_CONTENT);
+
+			DocumentContext lookup = JsonPath.parse(restTemplate
+					.withBasicAuth("felix", "abc123")
+					.getForEntity("/cashcards?ids=99,101,102", String.class).getBody());
+			assertThat(lookup.read("$.cashCards[0].amount", Double.class)).isCloseTo(
+					cashCardLedger.find(99L, "felix").getAmount(), within(0.001));
+			assertThat(lookup.read("$.missing", List.class)).containsExactly(102);
+		}
+
+		@Test
+		void shouldRefuseTheMutationsOfACardBeingDeleted() {
+			ResponseEntity<Void> created = restTemplate.withBasicAuth("kumar2", "xyz789")
+					.postForEntity("/cashcards", new CashCard(null, 5.0), Void.class);
+			String location = created.getHeaders().getLocation().getPath();
+			Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+
+			// the row delete fails: the card is back
+			assertThat(cashCardLedger.delete(id, "kumar2", () -> {
+				assertThat(balanceChange("kumar2", "xyz789", location + "/credit", 1.0)).isEqualTo(HttpStatus.NOT_FOUND);
+				return false;
+			})).isFalse();
+			assertThat(balanceChange("kumar2", "xyz789", location + "/credit", 1.0)).isEqualTo(HttpStatus.NO_CONTENT);
+
+			ResponseEntity<Void> deleted = restTemplate.withBasicAuth("kumar2", "xyz789")
+					.exchange(location, HttpMethod.DELETE, null, Void.class);
+			assertThat(deleted.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+			assertThat(cashCardLedger.find(id, "kumar2")).isNull();
+			assertThat(balanceChange("kumar2", "xyz789", location + "/credit", 1.0)).isEqualTo(HttpStatus.NOT_FOUND);
+			assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+		}
+
+		@Test
+		void shouldRecoverFromTheLatestSnapshotAndTheRecordsAfterIt() {
+			ResponseEntity<Void> created = restTemplate.withBasicAuth("kumar2", "xyz789")
+					.postForEntity("/cashcards", new CashCard(null, 5.0), Void.class);
+			String location = created.getHeaders().getLocation().getPath();
+			Long id = Long.valueOf(location.substring(location.lastIndexOf('/') + 1));
+			assertThat(balanceChange("kumar2", "xyz789", "/cashcards/102/credit", 1.0)).isEqualTo(HttpStatus.NO_CONTENT);
+
+			cashCardLedger.snapshot();
+			assertThat(balanceChange("kumar2", "xyz789", "/cashcards/" + id + "/credit", 1.0)).isEqualTo(HttpStatus.NO_CONTENT);
+			assertThat(balanceChange("kumar2", "xyz789", "/cashcards/102/debit", 50.0)).isEqualTo(HttpStatus.NO_CONTENT);
+
+			CashCardLedger restarted = restartedLedger();
+			assertThat(restarted.find(id, "kumar2").getAmount()).isEqualTo(6.0);
+			assertThat(restarted.find(102L, "kumar2").getAmount()).isEqualTo(151.0);
+			assertThat(restarted.find(102L, "kumar2").getVersion()).isEqualTo(cashCardLedger.find(102L, "kumar2").getVersion());
+		}
+
+		private HttpStatusCode balanceChange(String username, String password, String url, double amount) {
+			return restTemplate
+					.withBasicAuth(username, password)
+					.postForEntity(url, Map.of("amount", amount), Void.class)
+					.getStatusCode();
+		}
+
+		private CashCardLedger restartedLedger() {
+			CashCardLedger restarted = new CashCardLedger(LEDGER_DIRECTORY, DataSize.ofKilobytes(4), false,
+					Duration.ofHours(1), cashCardShards, dataSource);
+			restarted.recover();
+			return restarted;
+		}
+
+		private Double amountOfRow(Long id, String owner) {
+			return cashCardShards.callOn(cashCardShards.shardOf(owner), () -> new JdbcTemplate(dataSource)
+					.queryForObject("SELECT AMOUNT FROM CASH_CARD WHERE ID = ?", Double.class, id));
+		}
+	}
+
+	@Nested
+	@DirtiesContext
+	@ActiveProfiles("sharded")
+	class Sharding {
+
+		@Autowired
+		TestRestTemplate restTemplate;
+
+		@Autowired
+		CashCardShards cashCardShards;
+
+		@Autowired
+		ShardRebalancer shardRebalancer;
+
+		@Autowired
+		CashCardSummaryService cashCardSummaryService;
+
+		@Autowired
+		JdbcTemplate jdbcTemplate;
+
+		@Test
+		@DirtiesContext
+		void shouldKeepTheCashCardsOfEachOwnerOnItsShardWithIdsUniqueAcrossShards() {
+			assertThat(cashCardShards.shardOf("felix")).isNotEqualTo(cashCardShards.shardOf("kumar2"));
+			assertThat(ownersOnShard(cashCardShards.shardOf("felix"))).containsExactly("felix");
+			// seeded on shard 0 by data.sql, moved at startup
+			assertThat(ownersOnShard(cashCardShards.shardOf("kumar2"))).containsExactly("kumar2");
+
+			// each shard draws ids from its own range
+			for (int shard = 0; shard < cashCardShards.count(); shard++) {
+				long next = cashCardShards.callOn(shard, () ->
+						jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR CASH_CARD_SEQ", Long.class));
+				assertThat(next / (1L << 40)).isEqualTo(shard);
+			}
+
+			// more than one allocation block of ids per owner, alternating the shards
+			List<Long> ids = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				ids.addAll(createBatch("felix", "abc123", 40));
+				ids.addAll(createBatch("kumar2", "xyz789", 40));
+			}
+			assertThat(ids).hasSize(240).doesNotHaveDuplicates();
+
+			ResponseEntity<String> response = restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity("/cashcards/" + ids.get(ids.size() - 1), String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		}
+
+		private List<Long> createBatch(String username, String password, int size) {
+			List<CashCard> cashCards = new ArrayList<>();
+			for (int i = 0; i < size; i++) {
+				cashCards.add(new CashCard(null, 1.00));
+			}
+			ResponseEntity<String> response = restTemplate
+					.withBasicAuth(username, password)
+					.postForEntity("/cashcards/batch", cashCards, String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+			List<String> locations = JsonPath.parse(response.getBody()).read("$[*]");
+			return locations.stream().map(location -> Long.parseLong(location.substring(location.lastIndexOf('/') + 1))).toList();
+		}
+
+		@Test
+		@DirtiesContext
+		void shouldMoveTheCashCardsOfAnOwnerToItsShard() {
+			int wrongShard = 1 - cashCardShards.shardOf("kumar2");
+			cashCardShards.runOn(wrongShard, () ->
+					jdbcTemplate.update("INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) VALUES (555, 50.00, 'kumar2')"));
+
+			ResponseEntity<String> misplaced = restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity("/cashcards/555", String.class);
+			assertThat(misplaced.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+			assertThat(shardRebalancer.rebalance()).isEqualTo(new ShardRebalancer.Result(1, 1));
+			assertThat(shardRebalancer.rebalance()).isEqualTo(new ShardRebalancer.Result(0, 0));
+			assertThat(ownersOnShard(wrongShard)).doesNotContain("kumar2");
+
+			ResponseEntity<String> moved = restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity("/cashcards/555", String.class);
+			assertThat(moved.getStatusCode()).isEqualTo(HttpStatus.OK);
+			DocumentContext summary = JsonPath.parse(restTemplate
+					.withBasicAuth("kumar2", "xyz789")
+					.getForEntity("/cashcards/summary", String.class).getBody());
+			assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(2);
+			assertThat(cashCardSummaryService.checkAndRepair()).isEmpty();
+		}
+
+		@Test
+		void shouldMoveAnOwnerWithMoreCashCardsThanOneBatch() {
+			int wrongShard = 1 - cashCardShards.shardOf("felix");
+			int cards = ShardRebalancer.BATCH_SIZE * 2 + 1;
+			cashCardShards.runOn(wrongShard, () -> jdbcTemplate.update(
+					"INSERT INTO CASH_CARD(ID, AMOUNT, OWNER) SELECT X, 1.00, 'felix' FROM SYSTEM_RANGE(10000, ?)",
+					10000 + cards - 1));
+
+			assertThat(shardRebalancer.rebalance()).isEqualTo(new ShardRebalancer.Result(1, cards));
+			assertThat(ownersOnShard(wrongShard)).doesNotContain("felix");
+			DocumentContext summary = JsonPath.parse(restTemplate
+					.withBasicAuth("felix", "abc123")
+					.getForEntity("/cashcards/summary", String.class).getBody());
+			assertThat(summary.read("$.cardCount", Integer.class)).isEqualTo(3 + cards);
+		}
+
+		private List<String> ownersOnShard(int shard) {
+			return cashCardShards.callOn(shard, () ->
+					jdbcTemplate.queryForList("SELECT DISTINCT OWNER FROM CASH_CARD", String.class));
+		}
+	}
+
+	@Nested
+	@DirtiesContext
+	@ActiveProfiles("sharded")
+	@TestPropertySource(properties = {
+			"cashcard.dataset.cards=5000",
+			"cashcard.dataset.owners=50",
+			"cashcard.dataset.password=load-test"
+	})
+	class Dataset {
+
+		static final Path MANIFEST = Path.of("target", "dataset-" + UUID.randomUUID(), "manifest.csv");
+
+		@DynamicPropertySource
+		static void manifest(DynamicPropertyRegistry registry) {
+			registry.add("cashcard.dataset.manifest", MANIFEST::toString);
+		}
+
+		@Autowired
+		TestRestTemplate restTemplate;
+
+		@Autowired
+		CashCardShards cashCardShards;
+
+		@Autowired
+		DataSource dataSource;
+
+		@Test
+		void shouldLoadSkewedOwnersOnTheirShardsAndLetThemUseTheApi() throws Exception {
+			List<String> lines = Files.readAllLines(MANIFEST);
+			assertThat(lines.get(0)).isEqualTo("owner,firstId,cards");
+			assertThat(lines).hasSize(51);
+			Map<String, String[]> owners = new HashMap<>();
+			long cards = 0;
+			for (String line : lines.subList(1, lines.size())) {
+				String[] owner = line.split(",");
+				owners.put(owner[0], owner);
+				cards += Long.parseLong(owner[2]);
+			}
+			assertThat(cards).isEqualTo(5000);
+			// 1 / H(50) of the cards for the first owner, 1 / 50 of that for the last one
+			assertThat(Integer.parseInt(owners.get("owner-0")[2])).isBetween(1110, 1125);
+			assertThat(Integer.parseInt(owners.get("owner-49")[2])).isBetween(20, 25);
+
+			List<Long> rows = cashCardShards.scatter(shard -> new JdbcTemplate(dataSource)
+					.queryForObject("SELECT COUNT(*) FROM CASH_CARD WHERE OWNER LIKE 'owner-%'", Long.class));
+			assertThat(rows).allMatch(count -> count > 0);
+			assertThat(rows.stream().mapToLong(Long::longValue).sum()).isEqualTo(5000);
+
+			String[] first = owners.get("owner-0");
+			long lastId = Long.parseLong(first[1]) + Long.parseLong(first[2]) - 1;
+			ResponseEntity<String> summary = restTemplate
+					.withBasicAuth("owner-0", "load-test")
+					.getForEntity("/cashcards/summary", String.class);
+			assertThat(summary.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(JsonPath.parse(summary.getBody()).read("$.cardCount", Long.class)).isEqualTo(Long.parseLong(first[2]));
+
+			ResponseEntity<String> card = restTemplate
+					.withBasicAuth("owner-0", "load-test")
+					.getForEntity("/cashcards/" + lastId, String.class);
+			assertThat(card.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(JsonPath.parse(card.getBody()).read("$.owner", String.class)).isEqualTo("owner-0");
+			assertThat(restTemplate.withBasicAuth("owner-1", "load-test")
+					.getForEntity("/cashcards/" + lastId, String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+			// the ids Hibernate hands out next don't collide with the reserved ones
+			ResponseEntity<Void> created = restTemplate
+					.withBasicAuth("owner-0", "load-test")
+					.postForEntity("/cashcards", new CashCard(null, 12.34), Void.class);
+			assertThat(created.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+			String location = created.getHeaders().getLocation().getPath();
+			assertThat(Long.parseLong(location.substring(location.lastIndexOf('/') + 1))).isGreaterThan(lastId);
+		}
+	}
 }
@@ -0,0 +1,103 @@
+package backend.cashcard;
+
+import backend.cashcard.ledger.LedgerLog;
+import backend.cashcard.ledger.LedgerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+* A crash is a LedgerLog dropped without any cleanup, and a new one opened over the same directory.
+*/
+class LedgerLogTest {
+
+	// 4 records per segment
+	private static final long SEGMENT_SIZE = 4 * LedgerLog.RECORD_SIZE;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldReplayEveryRecordAcrossSegmentsAfterACrash() throws IOException {
+		LedgerLog log = new LedgerLog(directory, SEGMENT_SIZE, false);
+		for (long i = 1; i <= 10; i++) {
+			assertThat(log.append(i, i, 1000 + i, LedgerRecord.Type.CREDIT, 1.5, i * 1.5)).isEqualTo(i);
+		}
+		assertThat(segmentFiles()).hasSize(3);
+
+		LedgerLog recovered = new LedgerLog(directory, SEGMENT_SIZE, false);
+		List<LedgerRecord> records = replay(recovered, 1);
+		assertThat(records).hasSize(10);
+		assertThat(records.get(6)).isEqualTo(new LedgerRecord(7, 7, 7, 1007, LedgerRecord.Type.CREDIT, 1.5, 10.5));
+		assertThat(recovered.nextSequence()).isEqualTo(11);
+		assertThat(recovered.append(42, 1, 0, LedgerRecord.Type.SET, 3.0, 3.0)).isEqualTo(11);
+	}
+
+	@Test
+	void shouldSkipTornAndUnwrittenRecordsButNotTheOnesAfterThem() throws IOException {
+		LedgerLog log = new LedgerLog(directory, SEGMENT_SIZE, false);
+		for (long i = 1; i <= 6; i++) {
+			log.append(i, 1, 0, LedgerRecord.Type.DEBIT, 1.0, 0.0);
+		}
+		// record 2 half written, record 3 never written (its slot was reserved by a thread that died)
+		overwrite(segmentFiles().get(0), 1 * LedgerLog.RECORD_SIZE + 40, new byte[] {1, 2, 3});
+		overwrite(segmentFiles().get(0), 2 * LedgerLog.RECORD_SIZE, new byte[LedgerLog.RECORD_SIZE]);
+
+		LedgerLog recovered = new LedgerLog(directory, SEGMENT_SIZE, false);
+		assertThat(replay(recovered, 1)).extracting(LedgerRecord::sequence).containsExactly(1L, 4L, 5L, 6L);
+		assertThat(recovered.nextSequence()).isEqualTo(7);
+	}
+
+	@Test
+	void shouldReplayFromASequenceOnceTheSegmentsBeforeItAreDeleted() throws IOException {
+		LedgerLog log = new LedgerLog(directory, SEGMENT_SIZE, false);
+		for (long i = 1; i <= 10; i++) {
+			log.append(i, 1, 0, LedgerRecord.Type.SET, i, i);
+		}
+		// a snapshot taken at sequence 7 covers the first segment only, the second one still holds 7 and 8
+		log.deleteSegmentsBefore(7);
+		assertThat(segmentFiles()).hasSize(2);
+
+		LedgerLog recovered = new LedgerLog(directory, SEGMENT_SIZE, false);
+		assertThat(replay(recovered, 7)).extracting(LedgerRecord::sequence).containsExactly(7L, 8L, 9L, 10L);
+		assertThat(recovered.nextSequence()).isEqualTo(11);
+	}
+
+	@Test
+	void shouldStartAfterTheSnapshotWhenTheLogHasNothingNewer() {
+		LedgerLog recovered = new LedgerLog(directory, SEGMENT_SIZE, false);
+		assertThat(replay(recovered, 42)).isEmpty();
+		assertThat(recovered.nextSequence()).isEqualTo(42);
+	}
+
+	private static List<LedgerRecord> replay(LedgerLog log, long fromSequence) {
+		List<LedgerRecord> records = new ArrayList<>();
+		log.replay(fromSequence, records::add);
+		records.sort(Comparator.comparingLong(LedgerRecord::sequence));
+		return records;
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+	private static void overwrite(Path file, long position, byte[] bytes) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(bytes), position);
+		}
+	}
+}
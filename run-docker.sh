@@ -1,7 +1,9 @@
 #!/bin/bash
+# Usage: ./run-docker.sh [dockerfile], e.g. Docker/Dockerfile.fast-startup for the AOT + CDS image
+DOCKERFILE=${1:-Docker/Dockerfile}
 
 echo "Building the Docker image for Cashcard..."
-docker build -t cashcard_docker -f Docker/Dockerfile .
+docker build -t cashcard_docker -f "$DOCKERFILE" .
 
 echo "Running the Docker container..."
 docker run -p 8081:8081 cashcard_docker
\ No newline at end of file
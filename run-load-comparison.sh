@@ -0,0 +1,27 @@
+#!/bin/bash
+# Side-by-side load of the servlet (cashcard, port 8081) and reactive (cashcard-reactive, port 8082) services.
+# Usage: ./run-load-comparison.sh [connections] [duration-seconds]
+CONNECTIONS=${1:-1000}
+DURATION=${2:-30}
+
+echo "Building both services..."
+mvn -q -f cashcard/pom.xml -DskipTests package || exit 1
+mvn -q -f cashcard-reactive/pom.xml -DskipTests package || exit 1
+
+echo "Starting both services..."
+java -jar cashcard/target/cashcard-0.0.1-SNAPSHOT.jar --cashcard.rate-limit.enabled=false > /tmp/cashcard.log 2>&1 &
+SERVLET_PID=$!
+java -jar cashcard-reactive/target/cashcard-reactive-0.0.1-SNAPSHOT.jar > /tmp/cashcard-reactive.log 2>&1 &
+REACTIVE_PID=$!
+trap "kill $SERVLET_PID $REACTIVE_PID 2>/dev/null" EXIT
+
+for PORT in 8081 8082; do
+  until curl -s -o /dev/null -u felix:abc123 "http://localhost:$PORT/cashcards/99"; do sleep 1; done
+done
+
+for PORT in 8081 8082; do
+  echo "Driving $CONNECTIONS connections against port $PORT for ${DURATION}s..."
+  mvn -q -f cashcard/pom.xml -Pbenchmark test-compile exec:exec \
+    -Dbenchmark.main=backend.cashcard.load.LoadDriver \
+    -Dbenchmark.args="--url=http://localhost:$PORT --connections=$CONNECTIONS --duration=$DURATION"
+done
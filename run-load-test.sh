@@ -0,0 +1,35 @@
+#!/bin/bash
+# End-to-end load test of the servlet service on a production-sized synthetic dataset (see DatasetGenerator):
+# the instance starts with the load-test profile, bulk-loads the cards, then MixedLoadDriver replays the mix
+# over loopback and writes its report to cashcard/target/load-reports/.
+# Usage: ./run-load-test.sh [connections] [duration-seconds] [mix]
+# PROFILES adds profiles to the instance (e.g. PROFILES=sharded), CARDS and OWNERS resize the dataset.
+CONNECTIONS=${1:-64}
+DURATION=${2:-60}
+MIX=${3:-get:70,list:15,put:10,post:3,delete:2}
+PROFILES=load-test${PROFILES:+,$PROFILES}
+CARDS=${CARDS:-2000000}
+OWNERS=${OWNERS:-10000}
+REPORT=target/load-reports/load-$(date -u +%Y%m%dT%H%M%SZ).json
+
+echo "Building the service..."
+mvn -q -f cashcard/pom.xml -DskipTests package || exit 1
+
+echo "Starting the service ($PROFILES) and loading $CARDS cards of $OWNERS owners..."
+java -Xmx3g -jar cashcard/target/cashcard-0.0.1-SNAPSHOT.jar --spring.profiles.active=$PROFILES \
+  --cashcard.dataset.cards=$CARDS --cashcard.dataset.owners=$OWNERS \
+  --cashcard.dataset.manifest=cashcard/dataset/manifest.csv --cashcard.audit.directory=cashcard/audit > /tmp/cashcard-load-test.log 2>&1 &
+PID=$!
+trap "kill $PID 2>/dev/null" EXIT
+
+# ready once the dataset is loaded
+until curl -s "http://localhost:8081/actuator/health/readiness" | grep -q UP; do
+  kill -0 $PID 2>/dev/null || { echo "The service stopped, see /tmp/cashcard-load-test.log"; exit 1; }
+  sleep 1
+done
+
+echo "Driving $CONNECTIONS connections for ${DURATION}s with $MIX..."
+mvn -q -f cashcard/pom.xml -Pbenchmark test-compile exec:exec \
+  -Dbenchmark.main=backend.cashcard.load.MixedLoadDriver \
+  -Dbenchmark.args="--url=http://localhost:8081 --manifest=dataset/manifest.csv --connections=$CONNECTIONS --duration=$DURATION --mix=$MIX --report=$REPORT"
+echo "Report: cashcard/$REPORT"
@@ -0,0 +1,54 @@
+#!/bin/bash
+# Cold start of the service, per packaging: plain fat jar, extracted jar, extracted + Spring AOT,
+# extracted + AOT + AppCDS archive, and the native executable when one was built (mvn -Pnative native:compile).
+# Reports the median of the runs: time from launch to a healthy /actuator/health, then the latency of the
+# first and the second GET /cashcards/{id} (the first one also initializes the DispatcherServlet and warms BCrypt).
+# The CDS archive is tied to the JVM that built it: run with the same `java` as the build (or point JAVA at it).
+# Readiness is polled every 100ms, which is the resolution of the startup times.
+# Usage: ./run-startup-comparison.sh [runs]
+RUNS=${1:-5}
+JAVA=${JAVA:-java}
+PORT=8091
+APP=cashcard/target/application
+JAR=cashcard-0.0.1-SNAPSHOT.jar
+
+echo "Building the service with the fast-startup profile..."
+mvn -q -f cashcard/pom.xml -Pfast-startup -DskipTests package -Dcds.java="$(command -v $JAVA)" > /dev/null || exit 1
+
+# run from the extracted directory: the CDS archive only applies to the exact class path of its training run
+declare -A VARIANTS=(
+  [1-jar]="$JAVA -jar ../$JAR"
+  [2-extracted]="$JAVA -jar $JAR"
+  [3-aot]="$JAVA -Dspring.aot.enabled=true -jar $JAR"
+  [4-aot-cds]="$JAVA -Xshare:on -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar $JAR"
+)
+if [ -x cashcard/target/cashcard ]; then
+  VARIANTS[5-native]="../cashcard"
+fi
+
+now_ms() { date +%s%3N; }
+median() { sort -n | awk '{ a[NR] = $1 } END { print a[int((NR + 1) / 2)] }'; }
+get_ms() { curl -s -o /dev/null -w '%{time_total}' -u felix:abc123 "http://localhost:$PORT/cashcards/99" | awk '{ printf "%.1f", $1 * 1000 }'; }
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+printf "%-12s %12s %16s %16s\n" variant "startup ms" "1st request ms" "2nd request ms"
+for VARIANT in $(echo "${!VARIANTS[@]}" | tr ' ' '\n' | sort); do
+  : > "$WORK/startup"; : > "$WORK/first"; : > "$WORK/second"
+  for RUN in $(seq "$RUNS"); do
+    START=$(now_ms)
+    # the rate limit would only add noise here
+    (cd "$APP" && exec ${VARIANTS[$VARIANT]} --server.port=$PORT --cashcard.rate-limit.enabled=false \
+      --cashcard.audit.directory="$WORK/audit" > "$WORK/$VARIANT.log" 2>&1) &
+    PID=$!
+    until curl -s -o /dev/null -f "http://localhost:$PORT/actuator/health"; do
+      if ! kill -0 $PID 2>/dev/null; then echo "$VARIANT failed to start, see its log:"; tail -20 "$WORK/$VARIANT.log"; exit 1; fi
+      sleep 0.1
+    done
+    echo $(( $(now_ms) - START )) >> "$WORK/startup"
+    get_ms >> "$WORK/first"; echo >> "$WORK/first"
+    get_ms >> "$WORK/second"; echo >> "$WORK/second"
+    kill $PID; wait $PID 2>/dev/null
+  done
+  printf "%-12s %12s %16s %16s\n" "${VARIANT#*-}" "$(median < "$WORK/startup")" "$(median < "$WORK/first")" "$(median < "$WORK/second")"
+done
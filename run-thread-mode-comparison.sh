@@ -0,0 +1,35 @@
+#!/bin/bash
+# Platform threads versus virtual threads for the servlet service, under regular load plus slow clients.
+# Both instances run on the same JDK, which must be 21 or newer (point JAVA at it if `java` is older).
+# Usage: ./run-thread-mode-comparison.sh [connections] [slow-clients] [duration-seconds]
+CONNECTIONS=${1:-200}
+SLOW_CLIENTS=${2:-400}
+DURATION=${3:-30}
+JAVA=${JAVA:-java}
+
+echo "Building the service..."
+mvn -q -f cashcard/pom.xml -DskipTests package || exit 1
+
+echo "Starting platform (8081) and virtual-threads (8083) instances..."
+# the load driver is a handful of principals looping, the per-principal rate limit would throttle it
+$JAVA -jar cashcard/target/cashcard-0.0.1-SNAPSHOT.jar --server.port=8081 --cashcard.rate-limit.enabled=false \
+  > /tmp/cashcard-platform.log 2>&1 &
+PLATFORM_PID=$!
+$JAVA -Djdk.tracePinnedThreads=short -jar cashcard/target/cashcard-0.0.1-SNAPSHOT.jar --server.port=8083 \
+  --spring.profiles.active=virtual-threads --cashcard.rate-limit.enabled=false > /tmp/cashcard-virtual.log 2>&1 &
+VIRTUAL_PID=$!
+trap "kill $PLATFORM_PID $VIRTUAL_PID 2>/dev/null" EXIT
+
+for PORT in 8081 8083; do
+  until curl -s -o /dev/null -u felix:abc123 "http://localhost:$PORT/cashcards/99"; do sleep 1; done
+done
+
+for PORT in 8081 8083; do
+  echo "Driving $CONNECTIONS connections and $SLOW_CLIENTS slow clients against port $PORT for ${DURATION}s..."
+  mvn -q -f cashcard/pom.xml -Pbenchmark test-compile exec:exec \
+    -Dbenchmark.main=backend.cashcard.load.LoadDriver \
+    -Dbenchmark.args="--url=http://localhost:$PORT --connections=$CONNECTIONS --slow-clients=$SLOW_CLIENTS --duration=$DURATION"
+done
+
+echo "Pinned virtual threads reported by the JDK (none expected on the request path):"
+grep -c "onPinned\|<== monitors" /tmp/cashcard-virtual.log